@@ -1,97 +1,450 @@
 package com.clipy.linux;
 
-import java.awt.*;
-import java.awt.datatransfer.Clipboard;
-import java.awt.datatransfer.DataFlavor;
-import java.awt.datatransfer.StringSelection;
-import java.util.ArrayDeque;
+import com.clipy.linux.clipboard.AwtClipboardSource;
+import com.clipy.linux.clipboard.ClipFlavor;
+import com.clipy.linux.clipboard.ClipboardSource;
+import com.clipy.linux.clipboard.RichClip;
+import com.clipy.linux.clipboard.RichStore;
+import com.clipy.linux.history.ContentStore;
+import com.clipy.linux.history.EvictionPolicy;
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.history.HistoryEvent;
+import com.clipy.linux.history.HistoryEventDispatcher;
+import com.clipy.linux.history.HistoryList;
+import com.clipy.linux.history.HistoryListener;
+import com.clipy.linux.history.HistoryRetention;
+import com.clipy.linux.history.HistorySnapshot;
+import com.clipy.linux.history.HistoryUsage;
+import com.clipy.linux.history.RetentionLimits;
+import com.clipy.linux.search.FuzzyMatch;
+import com.clipy.linux.search.HistorySearchIndex;
+
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 
 public class ClipboardService {
-    private final Deque<String> history = new ArrayDeque<>();
-    private int maxItems;
-    private String lastText = "";
+    // Writers mutate history under the lock and then publish a new
+    // immutable snapshot; readers only ever touch the volatile snapshot.
+    private final HistoryList history = new HistoryList();
+    private volatile HistorySnapshot current = HistorySnapshot.EMPTY;
+    private long version;
+    private final HistoryEventDispatcher events = new HistoryEventDispatcher();
+    // fed item for item under the same lock; never waits for a search
+    private final HistorySearchIndex searchIndex = new HistorySearchIndex();
+
+    private final ClipboardSource source;
+    // where large clips are kept; null keeps everything on the heap
+    private final ContentStore store;
+    private final HistoryRetention retention;
+    private ScheduledExecutorService expiry;
+
+    // Heavy flavors (images, HTML, file lists) are fetched and written on
+    // a small pool; when it falls behind, the oldest waiting copy is
+    // dropped, as the clipboard has moved past it anyway.
+    private static final int RICH_THREADS = 2;
+    private static final int RICH_QUEUE = 8;
+    private volatile RichStore richStore;
+    private volatile boolean plainTextOnly = true;
+    private ThreadPoolExecutor richPool;
+    private final List<RichListener> richListeners = new CopyOnWriteArrayList<>();
+
+    private record RichListener(LongConsumer listener, Executor executor) {
+    }
 
     public ClipboardService(int maxItems) {
-        this.maxItems = maxItems;
+        this(maxItems, new AwtClipboardSource());
+    }
+
+    public ClipboardService(int maxItems, ClipboardSource source) {
+        this(maxItems, source, null);
+    }
+
+    public ClipboardService(int maxItems, ClipboardSource source, ContentStore store) {
+        this.retention = new HistoryRetention(RetentionLimits.items(maxItems));
+        this.source = source;
+        this.store = store;
     }
 
     public synchronized void setMaxItems(int maxItems) {
-        this.maxItems = maxItems;
-        while (history.size() > maxItems) {
-            history.removeLast();
+        RetentionLimits l = retention.getLimits();
+        setRetention(new RetentionLimits(maxItems, l.maxBytes(), l.maxAgeMillis(), l.maxItemBytes()));
+    }
+
+    /**
+     * Apply new limits, evicting right away whatever no longer fits.
+     */
+    public synchronized void setRetention(RetentionLimits limits) {
+        retention.setLimits(limits);
+        List<HistoryEvent> changes = new ArrayList<>();
+        publish(evictOverflow(current, changes), changes);
+    }
+
+    public synchronized void setEvictionPolicy(EvictionPolicy policy) {
+        retention.setPolicy(policy, history);
+        List<HistoryEvent> changes = new ArrayList<>();
+        publish(evictOverflow(current, changes), changes);
+    }
+
+    /**
+     * Items and bytes retained right now, against the limits.
+     */
+    public synchronized HistoryUsage getUsage() {
+        return retention.usage(history.size());
+    }
+
+    /**
+     * Listen for history changes. Events are delivered through
+     * {@code executor}, e.g. Platform::runLater for views.
+     */
+    public void addHistoryListener(HistoryListener listener, Executor executor) {
+        events.addListener(listener, executor);
+    }
+
+    public void removeHistoryListener(HistoryListener listener) {
+        events.removeListener(listener);
+    }
+
+    /**
+     * Listen for images, HTML or file lists finishing saving, which happens
+     * after their entry was added. Gets the entry's hash through
+     * {@code executor}.
+     */
+    public void addRichListener(LongConsumer listener, Executor executor) {
+        richListeners.add(new RichListener(listener, executor));
+    }
+
+    /**
+     * Current history, newest first. Lock-free and zero-copy; compare
+     * {@link HistorySnapshot#getVersion()} to skip work when nothing changed.
+     */
+    public HistorySnapshot getSnapshot() {
+        return current;
+    }
+
+    /**
+     * Items containing {@code query}, ignoring case, newest first; at most
+     * {@code limit} of them. Uses the trigram index, so it is fast enough
+     * to run on every keystroke.
+     */
+    public List<HistoryEntry> search(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * {@link #search(String, int)} that gives up, returning null, once
+     * {@code cancelled} turns true.
+     */
+    public List<HistoryEntry> search(String query, int limit, BooleanSupplier cancelled) {
+        return searchIndex.search(query, limit, cancelled);
+    }
+
+    /**
+     * The {@code limit} best fuzzy matches for {@code query}, best first.
+     */
+    public List<FuzzyMatch> fuzzySearch(String query, int limit) {
+        return searchIndex.fuzzySearch(query, limit);
+    }
+
+    public List<FuzzyMatch> fuzzySearch(String query, int limit, BooleanSupplier cancelled) {
+        return searchIndex.fuzzySearch(query, limit, cancelled);
+    }
+
+    /**
+     * Put {@code text} on the clipboard, together with any images, HTML or
+     * files kept for it, unless only plain text is wanted.
+     */
+    public void setClipboardText(String text) {
+        RichStore rs = richStore;
+        if (rs != null && !plainTextOnly) {
+            long hash = HistoryList.contentHash(text);
+            if (rs.flavorsOf(hash) != 0) {
+                source.setContents(rs.open(hash, text), text);
+                return;
+            }
         }
+        source.setText(text);
+    }
+
+    /**
+     * The {@link ClipFlavor} bits kept for a history entry, 0 if none.
+     */
+    public int getRichFlavors(long hash) {
+        RichStore rs = richStore;
+        return rs == null ? 0 : rs.flavorsOf(hash);
     }
 
-    public synchronized Deque<String> getHistory() {
-        return new ArrayDeque<>(history);
+    /**
+     * A small PNG of the entry's image, or null. A missing one is made on
+     * the rich pool, and rich listeners hear when it is there. Not for the
+     * FX thread: it checks the disk.
+     */
+    public Path getThumbnail(long hash) {
+        RichStore rs = richStore;
+        if (rs == null) return null;
+        Path thumb = rs.thumbnail(hash);
+        ThreadPoolExecutor pool = richPool;
+        if (thumb == null && pool != null && ClipFlavor.IMAGE.in(rs.flavorsOf(hash))) {
+            pool.execute(() -> {
+                try {
+                    if (rs.makeThumbnail(hash)) richSaved(hash);
+                } catch (IOException e) {
+                    System.err.println("Could not make thumbnail: " + e.getMessage());
+                }
+            });
+        }
+        return thumb;
     }
 
-    public synchronized void setClipboardText(String text) {
-        StringSelection sel = new StringSelection(text);
-        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(sel, null);
+    /**
+     * Where to keep heavy clipboard flavors. Call before {@link #start()}.
+     */
+    public void setRichStore(RichStore store) {
+        this.richStore = store;
+        updateCapture();
     }
 
-    public void start() {
-        Thread t = new Thread(this::loop, "clipboard-watcher");
-        t.setDaemon(true);
-        t.start();
+    /**
+     * Capture text only (the default), or also images, HTML and file
+     * lists when a rich store is set.
+     */
+    public void setPlainTextOnly(boolean plainTextOnly) {
+        this.plainTextOnly = plainTextOnly;
+        updateCapture();
     }
 
-    private void loop() {
-        Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-        while (true) {
+    private synchronized void updateCapture() {
+        boolean rich = richStore != null && !plainTextOnly;
+        // also makes missing thumbnails, so kept with text-only capture
+        if (richStore != null && richPool == null) {
+            richPool = new ThreadPoolExecutor(1, RICH_THREADS, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(RICH_QUEUE), r -> {
+                Thread t = new Thread(r, "clipboard-rich");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
+        }
+        source.setRichListener(rich ? ClipFlavor.RICH : 0, rich ? this::onRichClip : null);
+    }
+
+    // On the watcher thread, right after onClipboardText took the text.
+    private void onRichClip(RichClip clip) {
+        RichStore rs = richStore;
+        ThreadPoolExecutor pool = richPool;
+        if (rs == null || pool == null) return;
+        long hash = HistoryList.contentHash(clip.text());
+        int wanted = clip.flavors() & ClipFlavor.RICH;
+        if ((rs.flavorsOf(hash) & wanted) == wanted) return; // stored already
+        pool.execute(() -> {
             try {
-                if (clipboard.isDataFlavorAvailable(DataFlavor.stringFlavor)) {
-                    String data = (String) clipboard.getData(DataFlavor.stringFlavor);
-                    if (data != null && !data.isEmpty() && !data.equals(lastText)) {
-                        addToHistory(data);
-                        lastText = data;
-                        System.out.println("New clipboard item: " +
-                                data.replaceAll("\\s+", " ")
-                                        .substring(0, Math.min(40, data.length())));
-                    }
-                }
-                Thread.sleep(300);
-            } catch (Exception e) {
-                // ignore and keep watching
+                rs.save(hash, clip);
+                richSaved(hash);
+            } catch (IOException e) {
+                System.err.println("Could not keep clipboard " + describe(clip.flavors()) + ": " + e.getMessage());
             }
+        });
+    }
+
+    private void richSaved(long hash) {
+        for (RichListener l : richListeners) {
+            l.executor().execute(() -> l.listener().accept(hash));
         }
     }
 
-    private synchronized void addToHistory(String text) {
-        history.remove(text);
-        history.addFirst(text);
-        while (history.size() > maxItems) {
-            history.removeLast();
+    private static String describe(int flavors) {
+        List<String> names = new ArrayList<>();
+        for (ClipFlavor f : ClipFlavor.values()) {
+            if (f != ClipFlavor.TEXT && f.in(flavors)) names.add(f.name().toLowerCase());
         }
+        return String.join("/", names);
     }
 
-    public synchronized void loadFrom(List<String> items) {
-        history.clear();
-        for (String s : items) {
-            if (s != null && !s.isEmpty()) {
-                history.addLast(s);
+    /**
+     * Read the clipboard directly, bypassing history.
+     */
+    public String getClipboardText() {
+        return source.getText();
+    }
+
+    public void start() {
+        source.start(this::onClipboardText);
+        expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "history-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        expiry.scheduleWithFixedDelay(this::expireOld, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        source.stop();
+        synchronized (this) {
+            if (richPool != null) {
+                richPool.shutdownNow();
+                richPool = null;
             }
         }
-        if (!history.isEmpty()) {
-            lastText = history.peekFirst();
+        if (expiry != null) {
+            expiry.shutdownNow();
+            expiry = null;
+        }
+    }
+
+    /**
+     * Drop items past the maximum age. Also runs once a minute while
+     * started.
+     */
+    public synchronized void expireOld() {
+        List<HistoryEvent> changes = new ArrayList<>();
+        publish(evictOverflow(current, changes), changes);
+    }
+
+    private void onClipboardText(String data) {
+        if (!retention.accepts(data.length())) {
+            System.out.println("Skipping clipboard item of " + data.length() + " chars (over the item size limit)");
+            return;
+        }
+        // hashing and blob writes happen outside the lock
+        HistoryEntry entry = HistoryEntry.capture(data, System.currentTimeMillis(), store);
+        synchronized (this) {
+            if (!history.isEmpty() && history.first().sameContent(entry)) return;
+            addToHistory(entry);
+        }
+        String preview = data.substring(0, Math.min(40, data.length()));
+        System.out.println("New clipboard item: " + preview.replaceAll("\\s+", " "));
+    }
+
+    private synchronized void addToHistory(HistoryEntry entry) {
+        HistorySnapshot s = current;
+        List<HistoryEvent> changes = new ArrayList<>(2);
+        long next = version + 1;
+        HistoryEntry previous = history.findByHash(entry.getHash(), entry.getLength());
+        if (previous != null && previous.sameContent(entry)) {
+            // a re-copy keeps its original creation time
+            entry = entry.withCreated(previous.getCreated());
+        }
+        long previousSeq = history.addFirst(entry);
+        if (previousSeq != HistoryList.NO_SEQ) {
+            int from = s.indexOfSeq(previousSeq);
+            retention.removed(s.get(from), previousSeq);
+            searchIndex.remove(s.get(from), previousSeq);
+            changes.add(HistoryEvent.promoted(next, entry, from));
+            s = s.without(previousSeq);
+        } else {
+            changes.add(HistoryEvent.inserted(next, entry));
         }
+        s = s.withFirst(entry, history.firstSeq());
+        retention.added(entry, history.firstSeq());
+        searchIndex.add(entry, history.firstSeq());
+        publish(evictOverflow(s, changes), changes);
     }
 
-    public synchronized List<String> snapshot() {
-        return new ArrayList<>(history);
+    // Drops expired items, then whatever the eviction policy picks until
+    // history is back within budget. The newest item is always kept.
+    private HistorySnapshot evictOverflow(HistorySnapshot s, List<HistoryEvent> changes) {
+        long next = version + 1;
+        long now = System.currentTimeMillis();
+        // history is in order of last copy, so expired items are at the end
+        while (history.size() > 1 && retention.expired(history.last(), now)) {
+            s = evict(s, history.lastSeq(), next, changes);
+        }
+        while (history.size() > 1 && retention.overBudget(history.size())) {
+            long seq = retention.victim(history, history.firstSeq());
+            if (seq == HistoryList.NO_SEQ) break;
+            s = evict(s, seq, next, changes);
+        }
+        return s;
+    }
+
+    private HistorySnapshot evict(HistorySnapshot s, long seq, long version,
+                                  List<HistoryEvent> changes) {
+        int index = s.indexOfSeq(seq);
+        HistoryEntry entry = s.get(index);
+        changes.add(HistoryEvent.evicted(version, entry, index));
+        history.remove(entry);
+        retention.removed(entry, seq);
+        searchIndex.remove(entry, seq);
+        return s.without(seq);
+    }
+
+    public synchronized void clear() {
+        if (history.isEmpty()) return;
+        history.clear();
+        retention.cleared();
+        searchIndex.clear();
+        publish(HistorySnapshot.EMPTY, List.of(HistoryEvent.cleared(version + 1)));
+    }
+
+    public synchronized void loadFrom(List<HistoryEntry> items) {
+        history.clear();
+        retention.cleared();
+        searchIndex.clear();
+        long now = System.currentTimeMillis();
+        for (HistoryEntry e : items) {
+            if (retention.isFull(history.size())) break;
+            if (e != null && e.getLength() > 0 && retention.fits(e, history.size(), now)
+                    && history.addLast(e)) {
+                retention.added(e, history.lastSeq());
+                searchIndex.add(e, history.lastSeq());
+            }
+        }
+        version++;
+        current = HistorySnapshot.of(history, version);
+        events.fire(List.of(HistoryEvent.loaded(version)), current);
     }
 
-    public synchronized List<String> getRecent(int max) {
-        List<String> list = new ArrayList<>();
-        int i = 0;
-        for (String s : history) {
-            if (i++ >= max) break;
-            list.add(s);
+    /**
+     * Add saved items behind the current oldest one, used to stream the rest
+     * of the saved history in after startup. Items already present, and
+     * anything that does not fit the retention limits, are skipped.
+     *
+     * @return the history version after the append
+     */
+    public synchronized long appendOlder(List<HistoryEntry> items) {
+        List<HistoryEntry> added = new ArrayList<>(items.size());
+        long[] seqs = new long[items.size()];
+        long now = System.currentTimeMillis();
+        for (HistoryEntry e : items) {
+            if (retention.isFull(history.size())) break;
+            if (e != null && e.getLength() > 0 && retention.fits(e, history.size(), now)
+                    && history.addLast(e)) {
+                seqs[added.size()] = history.lastSeq();
+                retention.added(e, history.lastSeq());
+                searchIndex.add(e, history.lastSeq());
+                added.add(e);
+            }
         }
-        return list;
+        if (!added.isEmpty()) {
+            version++;
+            current = current.withLastAll(added, seqs).withVersion(version);
+            events.fire(List.of(HistoryEvent.loaded(version)), current);
+        }
+        return version;
+    }
+
+    public synchronized boolean isFull() {
+        return retention.isFull(history.size());
+    }
+
+    public List<HistoryEntry> getRecent(int max) {
+        HistorySnapshot s = current;
+        return s.subList(0, Math.min(Math.max(max, 0), s.size()));
+    }
+
+    private void publish(HistorySnapshot s, List<HistoryEvent> changes) {
+        if (changes.isEmpty()) return;
+        version++;
+        current = s.withVersion(version);
+        events.fire(changes, current);
     }
 }
@@ -1,22 +1,43 @@
 package com.clipy.linux;
 
+import com.clipy.linux.clipboard.AwtClipboardSource;
 import com.clipy.linux.controller.TrayController;
+import com.clipy.linux.history.EvictionPolicy;
+import com.clipy.linux.history.RetentionLimits;
+import com.clipy.linux.hotkey.AbbreviationExpander;
+import com.clipy.linux.hotkey.HotkeyDispatcher;
 import com.clipy.linux.model.PreferencesModel;
+import com.clipy.linux.model.Snippet;
 import com.clipy.linux.model.SnippetsModel;
-import com.clipy.linux.persistence.HistoryPersistence;
+import com.clipy.linux.paste.PasteEngine;
+import com.clipy.linux.paste.PasteTiming;
+import com.clipy.linux.persistence.HistoryStore;
 import com.clipy.linux.persistence.PreferencesPersistence;
+import com.clipy.linux.template.SnippetRenderer;
 import com.clipy.linux.view.HistoryView;
+import com.clipy.linux.view.LauncherView;
 import com.clipy.linux.view.PreferencesView;
 import com.clipy.linux.view.SnippetsView;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.stage.Stage;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public class ClipyLinuxApp extends Application {
 
     private ClipboardService clipboardService;
+    private PasteEngine pasteEngine;
     private HistoryView historyView;
-    private HistoryPersistence historyPersistence;
+    private LauncherView launcherView;
+    private HotkeyDispatcher hotkeys;
+    private AbbreviationExpander abbreviations;
+    private SnippetRenderer snippetRenderer;
+    private HistoryStore historyStore;
     private PreferencesPersistence prefsPersistence;
     private PreferencesModel preferences;
     private Stage primaryStage;
@@ -24,31 +45,58 @@ public class ClipyLinuxApp extends Application {
     private SnippetsModel snippetsModel;
     private SnippetsView snippetsView;
     private PreferencesView preferencesView;
+    private TrayController trayController;
 
     @Override
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
 
-        historyPersistence = new HistoryPersistence();
+        historyStore = new HistoryStore();
         prefsPersistence = new PreferencesPersistence();
         preferences = prefsPersistence.load();
 
-        clipboardService = new ClipboardService(preferences.maxHistory);
-        var loaded = historyPersistence.loadHistory();
+        clipboardService = new ClipboardService(preferences.maxHistory, new AwtClipboardSource(),
+                historyStore.getBlobStore());
+        clipboardService.setRichStore(historyStore.getRichStore());
+        clipboardService.setPlainTextOnly(preferences.plainTextOnly);
+        applyRetention();
+        // Newest items first so the tray and the first history page are
+        // ready right away; attach() streams in the rest.
+        var loaded = historyStore.loadHead(Math.max(preferences.maxTrayItems, 500));
         clipboardService.loadFrom(loaded);
+        historyStore.attach(clipboardService);
         clipboardService.start();
+        pasteEngine = new PasteEngine(clipboardService, pasteTiming());
+        GlobalHotkey.watchPaste(pasteEngine::onPasteKey);
 
         // shared snippets model + window
         snippetsModel = new SnippetsModel();
         snippetsView = new SnippetsView(snippetsModel);
         snippetsView.init(primaryStage);
+        snippetRenderer = new SnippetRenderer(snippetsModel, clipboardService);
 
         // history window
-        historyView = new HistoryView(clipboardService);
+        historyView = new HistoryView(clipboardService, pasteEngine);
         historyView.init(primaryStage);
 
+        // quick launcher over history and snippets
+        launcherView = new LauncherView(clipboardService, snippetsModel, pasteEngine, snippetRenderer);
+        launcherView.init(primaryStage);
+
+        hotkeys = new HotkeyDispatcher();
+        hotkeys.bind(HotkeyDispatcher.LAUNCHER, launcherView::show);
+        hotkeys.bind(HotkeyDispatcher.HISTORY, historyView::show);
+        hotkeys.setChords(preferences.hotkeys);
+        GlobalHotkey.listen(hotkeys);
+
+        abbreviations = new AbbreviationExpander(snippetsModel, pasteEngine, snippetRenderer);
+        abbreviations.setEnabled(preferences.expandAbbreviations);
+        GlobalHotkey.listen(abbreviations);
+        GlobalHotkey.listenMouse(abbreviations);
+
         // single PreferencesView editing the shared preferences instance
-        preferencesView = new PreferencesView(primaryStage, preferences, updatedPrefs -> {
+        preferencesView = new PreferencesView(primaryStage, preferences, clipboardService::getUsage,
+                this::diagnostics, updatedPrefs -> {
             // updatedPrefs == preferences (same instance), but keep this in sync explicitly
             this.preferences = updatedPrefs;
         });
@@ -57,28 +105,46 @@ public class ClipyLinuxApp extends Application {
         setupTray();
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            pasteEngine.close();
+            historyView.close();
+            hotkeys.close();
+            abbreviations.close();
             saveHistory();
             savePreferences();
+            if (snippetsModel != null) {
+                snippetsModel.close();
+            }
         }));
     }
 
     private void setupTray() {
         try {
-            TrayController trayController = new TrayController(
+            trayController = new TrayController(
                     this::showHistoryWindow,
+                    launcherView::show,
                     this::showPreferencesWindow,
                     () -> Platform.runLater(snippetsView::show),
-                    text -> clipboardService.setClipboardText(text),
-                    max -> clipboardService.getRecent(max),
+                    () -> clipboardService.clear(),
+                    pasteEngine::cancelQueue,
+                    pasteEngine::getQueueRemaining,
+                    pasteEngine::paste,
+                    this::pasteSnippet,
+                    clipboardService::getSnapshot,
                     () -> preferences.maxTrayItems,
                     snippetsModel
             );
             trayController.init();
+            pasteEngine.setStatusListener(trayController::notify);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    private void pasteSnippet(Snippet snippet) {
+        SnippetRenderer.Rendered r = snippetRenderer.render(snippet);
+        pasteEngine.paste(r.text(), r.caretBack());
+    }
+
     private void showHistoryWindow() {
         Platform.runLater(historyView::show);
     }
@@ -89,15 +155,59 @@ public class ClipyLinuxApp extends Application {
             preferencesView.show();
 
             // After user hit Save, preferences object has been mutated
-            clipboardService.setMaxItems(preferences.maxHistory);
+            applyRetention();
+            clipboardService.setPlainTextOnly(preferences.plainTextOnly);
+            pasteEngine.setTiming(pasteTiming());
+            hotkeys.setChords(preferences.hotkeys);
+            abbreviations.setEnabled(preferences.expandAbbreviations);
             savePreferences();
         });
     }
 
+    // Shown at the bottom of the preferences window.
+    private String diagnostics() {
+        List<String> lines = new ArrayList<>();
+        if (trayController != null && trayController.getLastMenuReadyMillis() >= 0) {
+            lines.add("Tray menu: up to date " + trayController.getLastMenuReadyMillis()
+                    + " ms after the last right-click");
+        }
+        if (hotkeys.getLastLatencyMillis() >= 0) {
+            lines.add("Hotkeys: window shown " + hotkeys.getLastLatencyMillis()
+                    + " ms after the last press, slowest " + hotkeys.getMaxLatencyMillis()
+                    + " ms (" + hotkeys.getSlowestAction() + ")");
+        }
+        String thumbnails = historyView.describeThumbnails();
+        if (thumbnails != null) {
+            lines.add("Thumbnails: " + thumbnails);
+        }
+        if (launcherView.getSnippetIndexMillis() >= 0) {
+            lines.add("Launcher: snippet index rebuilt in "
+                    + launcherView.getSnippetIndexMillis() + " ms");
+        }
+        if (pasteEngine.getPasteCount() > 0) {
+            lines.add("Paste: " + pasteEngine.getPasteCount() + " pastes, last "
+                    + pasteEngine.getLastLatencyMillis() + " ms, slowest "
+                    + pasteEngine.getMaxLatencyMillis() + " ms");
+        }
+        return String.join("\n", lines);
+    }
+
+    private void applyRetention() {
+        clipboardService.setEvictionPolicy(EvictionPolicy.named(preferences.evictionPolicy));
+        clipboardService.setRetention(new RetentionLimits(
+                preferences.maxHistory,
+                preferences.maxHistoryMb * 1024L * 1024L,
+                TimeUnit.DAYS.toMillis(preferences.maxAgeDays),
+                preferences.maxItemKb * 1024L));
+    }
+
+    private PasteTiming pasteTiming() {
+        return PasteTiming.DEFAULT.withKeyDelay(preferences.pasteKeyDelayMs);
+    }
+
     private void saveHistory() {
-        if (historyPersistence != null && clipboardService != null) {
-            var list = clipboardService.snapshot();
-            historyPersistence.saveHistory(list);
+        if (historyStore != null) {
+            historyStore.close();
         }
     }
 
@@ -108,6 +218,15 @@ public class ClipyLinuxApp extends Application {
     }
 
     public static void main(String[] args) {
+        if (args.length == 2 && "--export-history".equals(args[0])) {
+            try {
+                new HistoryStore().exportJson(Path.of(args[1]));
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
         launch(args);
     }
 }
@@ -4,46 +4,66 @@ import com.github.kwhat.jnativehook.GlobalScreen;
 import com.github.kwhat.jnativehook.NativeHookException;
 import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
 import com.github.kwhat.jnativehook.keyboard.NativeKeyListener;
+import com.github.kwhat.jnativehook.mouse.NativeMouseListener;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class GlobalHotkey {
 
-    public static void register(Runnable onHotkey) {
-        try {
-            Logger logger = Logger.getLogger(GlobalScreen.class.getPackage().getName());
-            logger.setLevel(Level.WARNING);
-            logger.setUseParentHandlers(false);
+    private static boolean installed;
 
-            GlobalScreen.registerNativeHook();  // install global hook[web:2][web:155]
-        } catch (NativeHookException ex) {
-            ex.printStackTrace();
-            return;
-        }
+    /**
+     * Add {@code listener} to the native hook, installing it first if
+     * needed. Listeners run on the hook's dispatch thread and must not
+     * block it.
+     */
+    public static void listen(NativeKeyListener listener) {
+        if (!install()) return;
+        GlobalScreen.addNativeKeyListener(listener);
+    }
 
-        GlobalScreen.addNativeKeyListener(new NativeKeyListener() {
-            @Override
-            public void nativeKeyPressed(NativeKeyEvent e) {
-                System.out.println("Pressed: " + e.getKeyText(e.getKeyCode()) +
-                        " mods=" + e.getModifiersText(e.getModifiers()));
+    /**
+     * Add {@code listener} for mouse button presses, on the same thread as
+     * key events.
+     */
+    public static void listenMouse(NativeMouseListener listener) {
+        if (!install()) return;
+        GlobalScreen.addNativeMouseListener(listener);
+    }
 
-                boolean isSpace = e.getKeyCode() == NativeKeyEvent.VC_SPACE;   // Space key[web:144]
-                boolean ctrlDown  = (e.getModifiers() & NativeKeyEvent.CTRL_MASK)  != 0;
-                boolean shiftDown = (e.getModifiers() & NativeKeyEvent.SHIFT_MASK) != 0;
+    /**
+     * Call {@code onPaste} whenever Ctrl+V is typed in any application.
+     * The key still goes to that application; this only observes it.
+     */
+    public static void watchPaste(Runnable onPaste) {
+        if (!install()) return;
 
-                if (isSpace && ctrlDown && shiftDown) {
-                    System.out.println("Detected Ctrl+Shift+Space");
-                    onHotkey.run();
+        GlobalScreen.addNativeKeyListener(new NativeKeyListener() {
+            @Override
+            public void nativeKeyReleased(NativeKeyEvent e) {
+                boolean ctrlDown = (e.getModifiers() & NativeKeyEvent.CTRL_MASK) != 0;
+                if (e.getKeyCode() == NativeKeyEvent.VC_V && ctrlDown) {
+                    onPaste.run();
                 }
             }
+        });
+    }
 
+    // Install the native hook once; false if it is not available.
+    private static synchronized boolean install() {
+        if (installed) return true;
+        try {
+            Logger logger = Logger.getLogger(GlobalScreen.class.getPackage().getName());
+            logger.setLevel(Level.WARNING);
+            logger.setUseParentHandlers(false);
 
-            @Override
-            public void nativeKeyReleased(NativeKeyEvent e) { }
-
-            @Override
-            public void nativeKeyTyped(NativeKeyEvent e) { }
-        });
+            GlobalScreen.registerNativeHook();  // install global hook[web:2][web:155]
+        } catch (NativeHookException | UnsatisfiedLinkError ex) {
+            ex.printStackTrace();
+            return false;
+        }
+        installed = true;
+        return true;
     }
 }
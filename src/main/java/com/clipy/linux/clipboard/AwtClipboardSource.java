@@ -0,0 +1,227 @@
+package com.clipy.linux.clipboard;
+
+import java.awt.*;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.FlavorEvent;
+import java.awt.datatransfer.FlavorListener;
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * System clipboard source driven by AWT notifications.
+ *
+ * The watcher thread sleeps until a FlavorListener event or a lost-ownership
+ * callback wakes it up. X11 does not report a text -> text copy between two
+ * other applications as a flavor change, so a slow fallback poll is kept;
+ * pass 0 to disable it.
+ *
+ * With a rich listener set, the watcher also looks at the flavor list
+ * (never the data) of each change. Copies offering heavy flavors are
+ * reported with contents that fetch from the live clipboard on demand,
+ * so the watcher itself stays as fast as a text-only one.
+ */
+public class AwtClipboardSource implements ClipboardSource, FlavorListener, ClipboardOwner {
+
+    public static final long DEFAULT_FALLBACK_POLL_MILLIS = 1000;
+
+    private final long fallbackPollMillis;
+    private final Object signal = new Object();
+    private boolean changed;          // guarded by signal
+
+    private Clipboard clipboard;
+    // the current watcher, null when stopped; an older one exits when it
+    // sees it has been replaced
+    private volatile Thread thread;
+    private String lastText;          // only touched by the watcher thread
+    private volatile int richFlavors;
+    private volatile Consumer<RichClip> richListener;
+    // bumped for every change reported; see LiveContents
+    private volatile long generation;
+
+    public AwtClipboardSource() {
+        this(DEFAULT_FALLBACK_POLL_MILLIS);
+    }
+
+    public AwtClipboardSource(long fallbackPollMillis) {
+        this.fallbackPollMillis = fallbackPollMillis;
+    }
+
+    @Override
+    public synchronized void start(Consumer<String> onText) {
+        if (thread != null) return;
+        clipboard().addFlavorListener(this);
+        notifyChanged(); // pick up whatever is on the clipboard right now
+
+        Thread t = new Thread(() -> loop(onText), "clipboard-watcher");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread t = thread;
+        if (t == null) return;
+        thread = null;
+        clipboard().removeFlavorListener(this);
+        t.interrupt();
+    }
+
+    @Override
+    public void setText(String text) {
+        StringSelection sel = new StringSelection(text);
+        // Owning the contents means we get lostOwnership() as soon as
+        // another application copies something.
+        clipboard().setContents(sel, this);
+        notifyChanged();
+    }
+
+    @Override
+    public void setContents(Transferable contents, String text) {
+        clipboard().setContents(contents, this);
+        notifyChanged();
+    }
+
+    @Override
+    public void setRichListener(int flavors, Consumer<RichClip> listener) {
+        richListener = listener;
+        richFlavors = listener == null ? 0 : flavors & ClipFlavor.RICH;
+    }
+
+    @Override
+    public String getText() {
+        try {
+            return readText(clipboard());
+        } catch (Exception e) {
+            return null; // busy, or the owner went away
+        }
+    }
+
+    @Override
+    public void flavorsChanged(FlavorEvent e) {
+        notifyChanged();
+    }
+
+    @Override
+    public void lostOwnership(Clipboard clipboard, Transferable contents) {
+        notifyChanged();
+    }
+
+    private synchronized Clipboard clipboard() {
+        if (clipboard == null) {
+            clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+        }
+        return clipboard;
+    }
+
+    private void notifyChanged() {
+        synchronized (signal) {
+            changed = true;
+            signal.notifyAll();
+        }
+    }
+
+    private void loop(Consumer<String> onText) {
+        Clipboard cb = clipboard();
+        while (isCurrent()) {
+            try {
+                boolean notified;
+                synchronized (signal) {
+                    if (!changed) {
+                        signal.wait(fallbackPollMillis);
+                    }
+                    notified = changed;
+                    changed = false;
+                }
+                if (!isCurrent()) break;
+
+                if (richFlavors != 0) {
+                    readRich(cb, onText, notified);
+                    continue;
+                }
+                String data = readText(cb);
+                if (data != null && !data.isEmpty() && !data.equals(lastText) && isCurrent()) {
+                    lastText = data;
+                    generation++;
+                    onText.accept(data);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // clipboard busy or owner went away, ignore and keep watching
+            }
+        }
+    }
+
+    private boolean isCurrent() {
+        return thread == Thread.currentThread();
+    }
+
+    // Like the text-only path, plus the flavor mask. A copy without text is
+    // only taken on a change notification: polling cannot tell one image
+    // from the next.
+    private void readRich(Clipboard cb, Consumer<String> onText, boolean notified) throws Exception {
+        int flavors = ClipFlavor.maskOf(cb.getAvailableDataFlavors());
+        int rich = flavors & richFlavors;
+        String data = ClipFlavor.TEXT.in(flavors) ? (String) cb.getData(DataFlavor.stringFlavor) : null;
+        if (data == null || data.isEmpty()) {
+            if (rich == 0 || !notified) return;
+            data = ClipFlavor.placeholder(rich);
+        } else if (data.equals(lastText)) {
+            return;
+        }
+        if (!isCurrent()) return;
+        lastText = data;
+        long gen = ++generation;
+        onText.accept(data);
+        Consumer<RichClip> listener = richListener;
+        if (rich != 0 && listener != null) {
+            listener.accept(new RichClip(data, flavors, new LiveContents(cb, gen)));
+        }
+    }
+
+    private String readText(Clipboard cb) throws Exception {
+        if (!cb.isDataFlavorAvailable(DataFlavor.stringFlavor)) {
+            return null;
+        }
+        return (String) cb.getData(DataFlavor.stringFlavor);
+    }
+
+    /**
+     * The clipboard as it was at one change: fetches from the system
+     * clipboard when asked, and throws once a newer change was seen.
+     */
+    private final class LiveContents implements Transferable {
+        private final Clipboard cb;
+        private final long gen;
+
+        LiveContents(Clipboard cb, long gen) {
+            this.cb = cb;
+            this.gen = gen;
+        }
+
+        @Override
+        public DataFlavor[] getTransferDataFlavors() {
+            return generation == gen ? cb.getAvailableDataFlavors() : new DataFlavor[0];
+        }
+
+        @Override
+        public boolean isDataFlavorSupported(DataFlavor flavor) {
+            return generation == gen && cb.isDataFlavorAvailable(flavor);
+        }
+
+        @Override
+        public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException {
+            if (generation != gen) {
+                throw new IOException("clipboard changed since");
+            }
+            return cb.getData(flavor);
+        }
+    }
+}
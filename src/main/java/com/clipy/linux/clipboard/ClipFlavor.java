@@ -0,0 +1,58 @@
+package com.clipy.linux.clipboard;
+
+import java.awt.datatransfer.DataFlavor;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The kinds of clipboard content that are captured, as bits of a mask.
+ * Everything but {@link #TEXT} is heavy: fetched and stored in the
+ * background, see {@link RichStore}.
+ */
+public enum ClipFlavor {
+    TEXT,
+    HTML,
+    IMAGE,
+    FILES;
+
+    public static final int RICH = HTML.bit() | IMAGE.bit() | FILES.bit();
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public boolean in(int mask) {
+        return (mask & bit()) != 0;
+    }
+
+    /**
+     * Which of our flavors {@code available} offers. Only looks at the
+     * flavor list, never at the data.
+     */
+    public static int maskOf(DataFlavor[] available) {
+        int mask = 0;
+        for (DataFlavor f : available) {
+            if (f.equals(DataFlavor.stringFlavor)) {
+                mask |= TEXT.bit();
+            } else if (f.isMimeTypeEqual("text/html")) {
+                mask |= HTML.bit();
+            } else if (f.equals(DataFlavor.imageFlavor)) {
+                mask |= IMAGE.bit();
+            } else if (f.equals(DataFlavor.javaFileListFlavor)) {
+                mask |= FILES.bit();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * History text for a copy that has no text of its own, e.g.
+     * "[Image 14:02:11]".
+     */
+    public static String placeholder(int mask) {
+        String kind = IMAGE.in(mask) ? "Image" : FILES.in(mask) ? "Files" : "HTML";
+        return "[" + kind + " " + LocalTime.now().format(TIME) + "]";
+    }
+}
@@ -0,0 +1,44 @@
+package com.clipy.linux.clipboard;
+
+import java.awt.datatransfer.Transferable;
+import java.util.function.Consumer;
+
+/**
+ * Where ClipboardService gets its text from. Implementations push every
+ * change to the listener instead of being polled by the service.
+ */
+public interface ClipboardSource {
+
+    /**
+     * Start watching. {@code onText} is called with each new, non-empty
+     * clipboard text, from whatever thread the source uses internally.
+     */
+    void start(Consumer<String> onText);
+
+    void stop();
+
+    void setText(String text);
+
+    /**
+     * Put {@code contents} on the clipboard; {@code text} is its plain text
+     * form. Sources without rich content just set the text.
+     */
+    default void setContents(Transferable contents, String text) {
+        setText(text);
+    }
+
+    /**
+     * Also report copies that offer any of the {@link ClipFlavor} bits in
+     * {@code flavors}, after their text went to the start() listener. A
+     * copy with no text but such a flavor gets a placeholder text. 0 turns
+     * this off; sources that only know text ignore it.
+     */
+    default void setRichListener(int flavors, Consumer<RichClip> listener) {
+    }
+
+    /**
+     * Text on the clipboard right now, or null if there is none or it
+     * cannot be read.
+     */
+    String getText();
+}
@@ -0,0 +1,11 @@
+package com.clipy.linux.clipboard;
+
+import java.awt.datatransfer.Transferable;
+
+/**
+ * What is known about a copy at change time: its history text and which
+ * {@link ClipFlavor}s were offered. {@code contents} fetches the data only
+ * when asked, and fails once the clipboard has moved on.
+ */
+public record RichClip(String text, int flavors, Transferable contents) {
+}
@@ -0,0 +1,43 @@
+package com.clipy.linux.clipboard;
+
+import java.awt.datatransfer.Transferable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Keeps the heavy flavors of a clip (HTML, image, file list), keyed by the
+ * content hash of its history entry.
+ */
+public interface RichStore {
+
+    /**
+     * Fetch the heavy flavors of {@code clip} and write them. Slow; never
+     * call it on the clipboard watcher thread.
+     */
+    void save(long hash, RichClip clip) throws IOException;
+
+    /**
+     * {@link ClipFlavor} bits stored for {@code hash}, 0 if none. Cheap.
+     */
+    int flavorsOf(long hash);
+
+    /**
+     * Clipboard contents offering {@code text} and the stored flavors,
+     * which are read from disk only when an application asks for them.
+     */
+    Transferable open(long hash, String text);
+
+    /**
+     * A small PNG of the clip's image, or null if there is none yet. Never
+     * decodes the full image.
+     */
+    Path thumbnail(long hash);
+
+    /**
+     * Make the thumbnail from the full image if it is missing. Slow: only
+     * call it on a worker pool.
+     *
+     * @return whether a new thumbnail was written
+     */
+    boolean makeThumbnail(long hash) throws IOException;
+}
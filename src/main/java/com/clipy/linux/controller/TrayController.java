@@ -1,43 +1,89 @@
 package com.clipy.linux.controller;
 
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.history.HistorySnapshot;
 import com.clipy.linux.model.Snippet;
 import com.clipy.linux.model.SnippetsModel;
 
 import java.awt.*;
-import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
-import java.util.function.IntFunction;
 import java.util.function.IntSupplier;
-
+import java.util.function.Supplier;
+
+/**
+ * Tray icon and its menu.
+ *
+ * The menu is built once and then patched: on each click it is brought up
+ * to date with the history snapshot and the snippets model, and skipped
+ * entirely if neither version moved. History items keep their MenuItem;
+ * only positions whose entry changed get a new label, and groups are only
+ * added or removed when the item count calls for it. The snippets submenu
+ * is rebuilt when the snippets version changes.
+ */
 public class TrayController {
 
+    private static final int GROUP_SIZE = 10;
+    // fixed items before the history groups: four entries and a separator
+    private static final int FIRST_GROUP_INDEX = 5;
+
     private final Runnable onShowHistory;
+    private final Runnable onQuickLaunch;
     private final Runnable onShowPreferences;
     private final Runnable onEditSnippets;
-    private final Consumer<String> onSelectItem;
-    private final IntFunction<List<String>> getRecentItems;
+    private final Runnable onClearHistory;
+    private final Runnable onStopQueue;
+    private final IntSupplier getQueueRemaining;
+    private final Consumer<String> onPasteItem;
+    private final Consumer<Snippet> onPasteSnippet;
+    private final Supplier<HistorySnapshot> getHistory;
     private final IntSupplier getMaxTrayItems;
 
     private final SnippetsModel snippetsModel;
 
     private TrayIcon trayIcon;
 
+    // menu state, only touched on the AWT event thread
+    private PopupMenu popup;
+    private final List<Menu> groups = new ArrayList<>();
+    private final List<MenuItem> historyItems = new ArrayList<>();
+    private HistoryEntry[] shown = new HistoryEntry[0];
+    private long shownHistoryVersion = -1;
+    private int shownMaxTray = -1;
+    private long shownSnippetsVersion = -1;
+    private Menu snippetsMenu;
+    private MenuItem clearHistoryItem;
+    private boolean clearShown;
+    private MenuItem stopQueueItem;
+    private boolean stopQueueShown;
+    private long lastReadyMillis = -1;
+
     public TrayController(Runnable onShowHistory,
+                          Runnable onQuickLaunch,
                           Runnable onShowPreferences,
                           Runnable onEditSnippets,
-                          Consumer<String> onSelectItem,
-                          IntFunction<List<String>> getRecentItems,
+                          Runnable onClearHistory,
+                          Runnable onStopQueue,
+                          IntSupplier getQueueRemaining,
+                          Consumer<String> onPasteItem,
+                          Consumer<Snippet> onPasteSnippet,
+                          Supplier<HistorySnapshot> getHistory,
                           IntSupplier getMaxTrayItems,
                           SnippetsModel snippetsModel) {
         this.onShowHistory = onShowHistory;
+        this.onQuickLaunch = onQuickLaunch;
         this.onShowPreferences = onShowPreferences;
         this.onEditSnippets = onEditSnippets;
-        this.onSelectItem = onSelectItem;
-        this.getRecentItems = getRecentItems;
+        this.onClearHistory = onClearHistory;
+        this.onStopQueue = onStopQueue;
+        this.getQueueRemaining = getQueueRemaining;
+        this.onPasteItem = onPasteItem;
+        this.onPasteSnippet = onPasteSnippet;
+        this.getHistory = getHistory;
         this.getMaxTrayItems = getMaxTrayItems;
         this.snippetsModel = snippetsModel;
     }
@@ -51,104 +97,221 @@ public class TrayController {
         SystemTray tray = SystemTray.getSystemTray();
         Image image = createDefaultImage();
 
-        PopupMenu popup = new PopupMenu();
-        rebuildMenu(popup);
+        popup = new PopupMenu();
+        buildFixedItems();
+        refreshMenu();
 
         trayIcon = new TrayIcon(image, "Clipy Linux", popup);
         trayIcon.setImageAutoSize(true);
 
         trayIcon.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                // some desktops open the menu on press already
+                onMenuClick(e);
+            }
+
             @Override
             public void mouseReleased(MouseEvent e) {
-                if (e.isPopupTrigger() || e.getButton() == MouseEvent.BUTTON3) {
-                    rebuildMenu(popup);
-                }
+                onMenuClick(e);
             }
         });
 
         tray.add(trayIcon);
     }
 
-    private void rebuildMenu(PopupMenu popup) {
-        popup.removeAll();
+    /**
+     * Milliseconds from the last right-click to the menu being up to
+     * date, or -1 before the first one.
+     */
+    public long getLastMenuReadyMillis() {
+        return lastReadyMillis;
+    }
+
+    /**
+     * Show a short message from the tray icon, or print it when there is
+     * no tray.
+     */
+    public void notify(String message) {
+        TrayIcon icon = trayIcon;
+        if (icon == null) {
+            System.out.println(message);
+            return;
+        }
+        icon.displayMessage("Clipy Linux", message, TrayIcon.MessageType.INFO);
+    }
+
+    private void onMenuClick(MouseEvent e) {
+        if (!e.isPopupTrigger() && e.getButton() != MouseEvent.BUTTON3) return;
+        refreshMenu();
+        lastReadyMillis = Math.max(0, System.currentTimeMillis() - e.getWhen());
+    }
 
+    private void buildFixedItems() {
         MenuItem showHistoryItem = new MenuItem("Open full history...");
+        MenuItem quickLaunchItem = new MenuItem("Quick launcher...");
         MenuItem editSnippetsItem = new MenuItem("Edit snippets...");
         MenuItem prefsItem = new MenuItem("Preferences...");
+        clearHistoryItem = new MenuItem("Clear history");
+        stopQueueItem = new MenuItem();
         MenuItem exitItem = new MenuItem("Quit");
 
         showHistoryItem.addActionListener(e -> onShowHistory.run());
+        quickLaunchItem.addActionListener(e -> onQuickLaunch.run());
         editSnippetsItem.addActionListener(e -> onEditSnippets.run());
         prefsItem.addActionListener(e -> onShowPreferences.run());
+        clearHistoryItem.addActionListener(e -> onClearHistory.run());
+        stopQueueItem.addActionListener(e -> onStopQueue.run());
         exitItem.addActionListener(e -> System.exit(0));
 
         popup.add(showHistoryItem);
+        popup.add(quickLaunchItem);
         popup.add(editSnippetsItem);
         popup.add(prefsItem);
         popup.addSeparator();
+        // history groups go here
+        popup.addSeparator();
+        snippetsMenu = new Menu("Snippets");
+        popup.add(snippetsMenu);
+        popup.addSeparator();
+        popup.add(exitItem);
+    }
 
-        // ----- history groups -----
+    /**
+     * Bring the menu up to date.
+     *
+     * @return number of menu items created or relabeled
+     */
+    private int refreshMenu() {
+        int changed = refreshStopQueue();
+        HistorySnapshot history = getHistory.get();
         int maxTray = getMaxTrayItems.getAsInt();
-        List<String> recent = getRecentItems.apply(maxTray);
-
-        int groupSize = 10;
-        int total = recent.size();
-        int start = 0;
-        while (start < total) {
-            int end = Math.min(start + groupSize, total);
+        if (history.getVersion() != shownHistoryVersion || maxTray != shownMaxTray) {
+            changed += refreshHistory(history, maxTray);
+            shownHistoryVersion = history.getVersion();
+            shownMaxTray = maxTray;
+        }
+        long snippetsVersion = snippetsModel.getVersion();
+        if (snippetsVersion != shownSnippetsVersion) {
+            changed += rebuildSnippets();
+            shownSnippetsVersion = snippetsVersion;
+        }
+        return changed;
+    }
 
-            int labelStart = start + 1;
-            int labelEnd = end;
-            String label = labelStart + " - " + labelEnd;
+    private int refreshHistory(HistorySnapshot history, int maxTray) {
+        int total = Math.min(Math.max(maxTray, 0), history.size());
+        int changed = 0;
+
+        // grow or shrink the item and group lists to fit total
+        while (historyItems.size() < total) {
+            int position = historyItems.size();
+            if (position % GROUP_SIZE == 0) {
+                Menu group = new Menu();
+                popup.insert(group, FIRST_GROUP_INDEX + groups.size());
+                groups.add(group);
+            }
+            MenuItem mi = new MenuItem();
+            // large clips are only read back when actually pasted
+            mi.addActionListener(e -> pasteEntry(position));
+            groups.get(position / GROUP_SIZE).add(mi);
+            historyItems.add(mi);
+        }
+        while (historyItems.size() > total) {
+            int position = historyItems.size() - 1;
+            MenuItem mi = historyItems.remove(position);
+            groups.get(position / GROUP_SIZE).remove(mi);
+            if (position % GROUP_SIZE == 0) {
+                popup.remove(groups.remove(groups.size() - 1));
+            }
+        }
+        if (shown.length != total) {
+            HistoryEntry[] resized = new HistoryEntry[total];
+            System.arraycopy(shown, 0, resized, 0, Math.min(shown.length, total));
+            shown = resized;
+        }
 
-            Menu groupMenu = new Menu(label);
+        // relabel only positions that now show a different entry
+        for (int i = 0; i < total; i++) {
+            HistoryEntry entry = history.get(i);
+            if (shown[i] != entry) {
+                shown[i] = entry;
+                historyItems.get(i).setLabel((i + 1) + ": " + entry.getLabel());
+                changed++;
+            }
+        }
+        for (int g = 0; g < groups.size(); g++) {
+            String label = (g * GROUP_SIZE + 1) + " - " + Math.min((g + 1) * GROUP_SIZE, total);
+            if (!label.equals(groups.get(g).getLabel())) {
+                groups.get(g).setLabel(label);
+            }
+        }
 
-            for (int i = start; i < end; i++) {
-                String itemText = recent.get(i);
-                String display = itemText.replaceAll("\\s+", " ");
-                if (display.length() > 50) {
-                    display = display.substring(0, 47) + "...";
-                }
-                int displayIndex = i + 1;
-                MenuItem mi = new MenuItem(displayIndex + ": " + display);
-                String value = itemText;
-                mi.addActionListener(e -> pasteText(value));
-                groupMenu.add(mi);
+        if (clearShown != (total > 0)) {
+            clearShown = total > 0;
+            if (clearShown) {
+                popup.insert(clearHistoryItem, popup.getItemCount() - 1);
+            } else {
+                popup.remove(clearHistoryItem);
             }
+        }
+        return changed;
+    }
 
-            popup.add(groupMenu);
-            start += groupSize;
+    // Shown above Quit only while a paste queue runs.
+    private int refreshStopQueue() {
+        int remaining = getQueueRemaining.getAsInt();
+        if (stopQueueShown != (remaining > 0)) {
+            stopQueueShown = remaining > 0;
+            if (stopQueueShown) {
+                popup.insert(stopQueueItem, popup.getItemCount() - 1);
+            } else {
+                popup.remove(stopQueueItem);
+            }
         }
+        if (!stopQueueShown) return 0;
+        stopQueueItem.setLabel("Stop paste queue (" + remaining + " left)");
+        return 1;
+    }
 
-        // ----- snippets section -----
-        popup.addSeparator();
-        Menu snippetsMenu = new Menu("Snippets");
-        if (snippetsModel.getFolders().isEmpty()) {
+    private int rebuildSnippets() {
+        snippetsMenu.removeAll();
+        List<String> folders = snippetsModel.getFolders();
+        if (folders.isEmpty()) {
             MenuItem empty = new MenuItem("(no snippets yet)");
             empty.setEnabled(false);
             snippetsMenu.add(empty);
-        } else {
-            for (String folder : snippetsModel.getFolders()) {
-                Menu folderMenu = new Menu(folder);
-                for (Snippet snippet : snippetsModel.getSnippetsInFolder(folder)) {
-                    String label = snippet.getName();
-                    if (label == null || label.isBlank()) {
-                        label = abbreviate(snippet.getContent(), 50);
-                    }
-                    MenuItem mi = new MenuItem(label);
-                    String text = snippet.getContent();
-                    mi.addActionListener(e -> pasteText(text));
-                    folderMenu.add(mi);
+            return 1;
+        }
+        int created = 0;
+        for (String folder : folders) {
+            Menu folderMenu = new Menu(folder);
+            List<Snippet> inFolder = snippetsModel.getSnippetsInFolder(folder);
+            if (inFolder.isEmpty()) {
+                MenuItem empty = new MenuItem("(empty)");
+                empty.setEnabled(false);
+                folderMenu.add(empty);
+            }
+            for (Snippet snippet : inFolder) {
+                String label = snippet.getName();
+                if (label == null || label.isBlank()) {
+                    label = abbreviate(snippet.getContent(), 50);
                 }
-                snippetsMenu.add(folderMenu);
+                MenuItem mi = new MenuItem(label);
+                mi.addActionListener(e -> onPasteSnippet.accept(snippet));
+                folderMenu.add(mi);
+                created++;
             }
+            snippetsMenu.add(folderMenu);
         }
-        popup.add(snippetsMenu);
+        return created;
+    }
 
-        if (total > 0 || !snippetsModel.getFolders().isEmpty()) {
-            popup.addSeparator();
+    private void pasteEntry(int position) {
+        HistoryEntry entry = position < shown.length ? shown[position] : null;
+        if (entry != null) {
+            pasteText(entry.getText());
         }
-        popup.add(exitItem);
     }
 
     private String abbreviate(String text, int max) {
@@ -211,18 +374,6 @@ public class TrayController {
         if (text == null) {
             return;
         }
-
-        onSelectItem.accept(text);
-
-        try {
-            Robot robot = new Robot();
-            robot.setAutoDelay(20);
-            robot.keyPress(KeyEvent.VK_CONTROL);
-            robot.keyPress(KeyEvent.VK_V);
-            robot.keyRelease(KeyEvent.VK_V);
-            robot.keyRelease(KeyEvent.VK_CONTROL);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+        onPasteItem.accept(text);
     }
 }
@@ -0,0 +1,18 @@
+package com.clipy.linux.history;
+
+import java.io.IOException;
+
+/**
+ * Off-heap home for clip contents too large to keep in memory; see
+ * {@link HistoryEntry#INLINE_MAX_CHARS}.
+ */
+public interface ContentStore {
+
+    /**
+     * Store {@code text}, returning the id to load it back with. Storing
+     * the same text twice returns the same id.
+     */
+    String put(String text) throws IOException;
+
+    String load(String id) throws IOException;
+}
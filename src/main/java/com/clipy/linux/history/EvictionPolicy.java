@@ -0,0 +1,75 @@
+package com.clipy.linux.history;
+
+/**
+ * Picks which history item goes first when history is over its item or
+ * byte budget. {@link HistoryRetention} tells the policy about every item
+ * added or removed, so a policy can keep its own ordering and answer
+ * {@link #victim} without scanning.
+ *
+ * Items are identified by their sequence number in {@link HistoryList}.
+ */
+public interface EvictionPolicy {
+
+    void added(HistoryEntry entry, long seq);
+
+    void removed(HistoryEntry entry, long seq);
+
+    void clear();
+
+    /**
+     * @param keepSeq item that must not be picked (the one just copied)
+     * @return sequence number of the item to evict next, or
+     * {@link HistoryList#NO_SEQ} if there is none
+     */
+    long victim(HistoryList history, long keepSeq);
+
+    /**
+     * Least recently copied first: the end of the history list. Needs no
+     * bookkeeping of its own.
+     */
+    static EvictionPolicy lru() {
+        return new EvictionPolicy() {
+            @Override
+            public void added(HistoryEntry entry, long seq) {
+            }
+
+            @Override
+            public void removed(HistoryEntry entry, long seq) {
+            }
+
+            @Override
+            public void clear() {
+            }
+
+            @Override
+            public long victim(HistoryList history, long keepSeq) {
+                long seq = history.lastSeq();
+                return seq == keepSeq ? HistoryList.NO_SEQ : seq;
+            }
+        };
+    }
+
+    /**
+     * First copied first, even if it was copied again since.
+     */
+    static EvictionPolicy oldestFirst() {
+        return new RankedEvictionPolicy(HistoryEntry::getCreated);
+    }
+
+    /**
+     * Biggest item first.
+     */
+    static EvictionPolicy largestFirst() {
+        return new RankedEvictionPolicy(e -> -e.getRetainedBytes());
+    }
+
+    /**
+     * Policy by preference name: "LRU", "OLDEST_FIRST" or "LARGEST_FIRST".
+     * Anything else means LRU.
+     */
+    static EvictionPolicy named(String name) {
+        if ("OLDEST_FIRST".equals(name)) return oldestFirst();
+        if ("LARGEST_FIRST".equals(name)) return largestFirst();
+        return lru();
+    }
+}
@@ -0,0 +1,212 @@
+package com.clipy.linux.history;
+
+import java.io.IOException;
+
+/**
+ * One clipboard history item.
+ *
+ * Small clips keep their text inline. Anything longer than
+ * {@link #INLINE_MAX_CHARS} is written to a {@link ContentStore} at capture
+ * time; the entry then only holds the hash, length, a short preview and the
+ * blob id, and {@link #getText()} reads the content back when it is needed
+ * (paste, full preview).
+ */
+public final class HistoryEntry {
+
+    public static final int PREVIEW_CHARS = 200;
+    public static final int INLINE_MAX_CHARS = 64 * 1024;
+    public static final int LABEL_CHARS = 50;
+
+    // rough cost of the entry object, its preview and list bookkeeping
+    private static final int OVERHEAD_BYTES = 128;
+
+    private final long hash;
+    private final int length;
+    private final long timestamp;
+    private final long created;
+    private final String preview;
+    private final String text;   // null when stored in the content store
+    private final String blobId; // null when inline
+    private final ContentStore store;
+    private String label; // computed on first use, see getLabel()
+
+    private HistoryEntry(long hash, int length, long timestamp, long created, String preview,
+                         String text, String blobId, ContentStore store) {
+        this.hash = hash;
+        this.length = length;
+        this.timestamp = timestamp;
+        this.created = created;
+        this.preview = preview;
+        this.text = text;
+        this.blobId = blobId;
+        this.store = store;
+    }
+
+    /**
+     * An entry that keeps {@code text} on the heap.
+     */
+    public static HistoryEntry of(String text, long timestamp) {
+        return new HistoryEntry(HistoryList.contentHash(text), text.length(), timestamp, timestamp,
+                preview(text), text, null, null);
+    }
+
+    /**
+     * An entry for newly captured {@code text}, moving it into {@code store}
+     * when it is large. Falls back to inline if the store fails.
+     */
+    public static HistoryEntry capture(String text, long timestamp, ContentStore store) {
+        if (store == null || text.length() <= INLINE_MAX_CHARS) {
+            return of(text, timestamp);
+        }
+        try {
+            String id = store.put(text);
+            return new HistoryEntry(HistoryList.contentHash(text), text.length(), timestamp, timestamp,
+                    preview(text), null, id, store);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return of(text, timestamp);
+        }
+    }
+
+    /**
+     * An entry whose content is already in {@code store}, as read back from
+     * disk.
+     */
+    public static HistoryEntry stored(long hash, int length, long timestamp, long created,
+                                      String preview, String blobId, ContentStore store) {
+        return new HistoryEntry(hash, length, timestamp, created, preview, null, blobId, store);
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Length of the full text in chars.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Capture time, or time of the last re-copy, in epoch millis.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * When this content was first copied, in epoch millis. Unlike
+     * {@link #getTimestamp()} it survives re-copies.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Approximate bytes this entry costs: two per char of content, whether
+     * that is on the heap or in the content store, plus a fixed overhead.
+     */
+    public long getRetainedBytes() {
+        return estimateBytes(length);
+    }
+
+    public static long estimateBytes(int length) {
+        return 2L * length + OVERHEAD_BYTES;
+    }
+
+    /**
+     * The first {@link #PREVIEW_CHARS} chars of the text, as-is.
+     */
+    public String getPreview() {
+        return preview;
+    }
+
+    /**
+     * One-line label for menus: the preview with whitespace runs collapsed
+     * to single spaces, cut to {@link #LABEL_CHARS}. Computed once.
+     */
+    public String getLabel() {
+        String l = label;
+        if (l == null) {
+            l = label(preview);
+            label = l;
+        }
+        return l;
+    }
+
+    public boolean isInline() {
+        return text != null;
+    }
+
+    public String getBlobId() {
+        return blobId;
+    }
+
+    /**
+     * The full text, read from the content store if needed. Null if the
+     * stored content could not be read.
+     */
+    public String getText() {
+        if (text != null) return text;
+        try {
+            return store.load(blobId);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Text that can be searched without I/O: the whole text for inline
+     * entries, the preview otherwise.
+     */
+    public String getSearchableText() {
+        return text != null ? text : preview;
+    }
+
+    public HistoryEntry withCreated(long newCreated) {
+        return new HistoryEntry(hash, length, timestamp, newCreated, preview, text, blobId, store);
+    }
+
+    /**
+     * Same clip content, decided without trusting the 64-bit hash alone.
+     */
+    public boolean sameContent(HistoryEntry other) {
+        if (hash != other.hash || length != other.length) return false;
+        if (text != null && other.text != null) return text.equals(other.text);
+        if (blobId != null && other.blobId != null) return blobId.equals(other.blobId);
+        String a = getText();
+        return a != null && a.equals(other.getText());
+    }
+
+    @Override
+    public String toString() {
+        return preview;
+    }
+
+    private static String label(String text) {
+        StringBuilder sb = new StringBuilder(Math.min(text.length(), LABEL_CHARS));
+        boolean space = false;
+        for (int i = 0; i < text.length() && sb.length() <= LABEL_CHARS; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && sb.length() > 0) sb.append(' ');
+            space = false;
+            sb.append(c);
+        }
+        if (space && sb.length() == 0) sb.append(' ');
+        if (sb.length() > LABEL_CHARS) {
+            sb.setLength(LABEL_CHARS - 3);
+            sb.append("...");
+        }
+        return sb.toString();
+    }
+
+    private static String preview(String text) {
+        return text.length() <= PREVIEW_CHARS ? text : text.substring(0, PREVIEW_CHARS);
+    }
+}
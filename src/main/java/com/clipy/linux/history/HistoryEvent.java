@@ -0,0 +1,46 @@
+package com.clipy.linux.history;
+
+/**
+ * One change to the clipboard history. Applying a batch of events in order
+ * to a list that mirrors the previous snapshot yields the new snapshot.
+ *
+ * @param version version of the snapshot this change belongs to
+ * @param item    the affected entry, null for CLEARED and LOADED
+ * @param index   newest-first position the change applies to: where the
+ *                item was before a PROMOTED or EVICTED, 0 for INSERTED
+ */
+public record HistoryEvent(Type type, long version, HistoryEntry item, int index) {
+
+    public enum Type {
+        /** New item at the front. */
+        INSERTED,
+        /** Existing item moved from {@code index} to the front. */
+        PROMOTED,
+        /** Item at {@code index} dropped. */
+        EVICTED,
+        /** History emptied. */
+        CLEARED,
+        /** History replaced wholesale; re-read the snapshot. */
+        LOADED
+    }
+
+    public static HistoryEvent inserted(long version, HistoryEntry item) {
+        return new HistoryEvent(Type.INSERTED, version, item, 0);
+    }
+
+    public static HistoryEvent promoted(long version, HistoryEntry item, int fromIndex) {
+        return new HistoryEvent(Type.PROMOTED, version, item, fromIndex);
+    }
+
+    public static HistoryEvent evicted(long version, HistoryEntry item, int index) {
+        return new HistoryEvent(Type.EVICTED, version, item, index);
+    }
+
+    public static HistoryEvent cleared(long version) {
+        return new HistoryEvent(Type.CLEARED, version, null, -1);
+    }
+
+    public static HistoryEvent loaded(long version) {
+        return new HistoryEvent(Type.LOADED, version, null, -1);
+    }
+}
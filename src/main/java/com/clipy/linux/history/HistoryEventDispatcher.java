@@ -0,0 +1,88 @@
+package com.clipy.linux.history;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers history events to listeners on the executor each one asked for
+ * (Platform::runLater for views). While a delivery is still queued, new
+ * events are appended to it instead of scheduling another task.
+ */
+public class HistoryEventDispatcher {
+
+    // Past this many queued events a listener is better off re-reading the
+    // snapshot than replaying deltas.
+    private static final int MAX_BATCH = 512;
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * The executor should hand the task off to another thread; a direct
+     * executor runs the listener on the writer's thread while
+     * ClipboardService is still locked.
+     */
+    public void addListener(HistoryListener listener, Executor executor) {
+        registrations.add(new Registration(listener, executor));
+    }
+
+    public void removeListener(HistoryListener listener) {
+        registrations.removeIf(r -> r.listener == listener);
+    }
+
+    public void fire(List<HistoryEvent> events, HistorySnapshot snapshot) {
+        if (events.isEmpty()) return;
+        for (Registration r : registrations) {
+            r.enqueue(events, snapshot);
+        }
+    }
+
+    private static final class Registration {
+        final HistoryListener listener;
+        final Executor executor;
+
+        private List<HistoryEvent> pending = new ArrayList<>();
+        private HistorySnapshot snapshot;
+        private boolean overflow;
+        private boolean scheduled;
+
+        Registration(HistoryListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        synchronized void enqueue(List<HistoryEvent> events, HistorySnapshot snap) {
+            if (!overflow) {
+                pending.addAll(events);
+                if (pending.size() > MAX_BATCH) {
+                    overflow = true;
+                    pending.clear();
+                }
+            }
+            snapshot = snap;
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            List<HistoryEvent> events;
+            HistorySnapshot snap;
+            synchronized (this) {
+                snap = snapshot;
+                events = overflow ? List.of(HistoryEvent.loaded(snap.getVersion())) : pending;
+                pending = new ArrayList<>();
+                snapshot = null;
+                overflow = false;
+                scheduled = false;
+            }
+            try {
+                listener.historyChanged(events, snap);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
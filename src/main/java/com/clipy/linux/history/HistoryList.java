@@ -0,0 +1,274 @@
+package com.clipy.linux.history;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Most-recent-first clipboard history with O(1) lookup, promote and evict.
+ *
+ * Items live in a doubly linked list (head = newest). A map from a 64-bit
+ * content hash to the node makes "is this text already in history" a single
+ * probe; nodes whose hashes collide are chained and told apart with a real
+ * {@link HistoryEntry#sameContent} check, so a collision can never merge two
+ * different clips.
+ *
+ * Every node carries a sequence number that grows towards the front, which
+ * is how {@link HistorySnapshot} finds the same item in its own structure.
+ *
+ * Not thread-safe, ClipboardService guards it with its own lock.
+ */
+public class HistoryList implements Iterable<HistoryEntry> {
+
+    /**
+     * Returned where a sequence number is expected but there is no item.
+     * Real sequence numbers can be negative (items appended at the back).
+     */
+    public static final long NO_SEQ = Long.MIN_VALUE;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final class Node {
+        HistoryEntry entry; // replaced on promote, same content
+        final long hash;
+        long seq;
+        Node prev;
+        Node next;
+        Node sameHash; // next node with an identical hash, usually null
+
+        Node(HistoryEntry entry) {
+            this.entry = entry;
+            this.hash = entry.getHash();
+        }
+    }
+
+    private final Map<Long, Node> index = new HashMap<>();
+    private Node head;
+    private Node tail;
+    private int size;
+    private long nextSeq = 1;   // next seq handed out at the front
+    private long lowestSeq = 1; // seq of the oldest item ever appended at the back
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 chars of {@code text}.
+     */
+    public static long contentHash(String text) {
+        long h = FNV_OFFSET;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            h ^= text.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public HistoryEntry first() {
+        return head == null ? null : head.entry;
+    }
+
+    public HistoryEntry last() {
+        return tail == null ? null : tail.entry;
+    }
+
+    public long firstSeq() {
+        return head == null ? NO_SEQ : head.seq;
+    }
+
+    public long lastSeq() {
+        return tail == null ? NO_SEQ : tail.seq;
+    }
+
+    /**
+     * Look an item up by its {@link #contentHash} and length alone, for
+     * callers that only kept those (the history journal). Two different
+     * clips with the same 64-bit hash and length are not told apart here.
+     */
+    public HistoryEntry findByHash(long hash, int length) {
+        for (Node n = index.get(hash); n != null; n = n.sameHash) {
+            if (n.entry.getLength() == length) {
+                return n.entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Put {@code entry} at the front, moving the existing entry with the
+     * same content there if there is one (and replacing it with
+     * {@code entry}, which may carry a newer timestamp). The item gets a
+     * fresh sequence number either way, see {@link #firstSeq()}.
+     *
+     * @return the item's previous sequence number if it was already in
+     * history (a promote), or {@link #NO_SEQ} if it is new
+     */
+    public long addFirst(HistoryEntry entry) {
+        Node existing = find(entry);
+        if (existing != null) {
+            long previous = existing.seq;
+            existing.entry = entry;
+            if (existing != head) {
+                unlink(existing);
+                linkFirst(existing);
+            }
+            existing.seq = nextSeq++;
+            return previous;
+        }
+        Node node = new Node(entry);
+        node.seq = nextSeq++;
+        linkFirst(node);
+        indexAdd(node);
+        size++;
+        return NO_SEQ;
+    }
+
+    /**
+     * Append {@code entry} as the oldest item, used when loading saved
+     * history. Duplicates are skipped.
+     *
+     * @return false if the content was already present
+     */
+    public boolean addLast(HistoryEntry entry) {
+        if (find(entry) != null) return false;
+        Node node = new Node(entry);
+        node.seq = --lowestSeq;
+        if (tail == null) {
+            head = tail = node;
+        } else {
+            node.prev = tail;
+            tail.next = node;
+            tail = node;
+        }
+        indexAdd(node);
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the removed item's sequence number, or {@link #NO_SEQ} if it
+     * was not present
+     */
+    public long remove(HistoryEntry entry) {
+        Node node = find(entry);
+        if (node == null) return NO_SEQ;
+        unlink(node);
+        indexRemove(node);
+        size--;
+        return node.seq;
+    }
+
+    public void clear() {
+        index.clear();
+        head = tail = null;
+        size = 0;
+    }
+
+    /**
+     * Visit every item with its sequence number, oldest first.
+     */
+    public void forEachOldestFirst(ObjLongConsumer<HistoryEntry> action) {
+        for (Node n = tail; n != null; n = n.prev) {
+            action.accept(n.entry, n.seq);
+        }
+    }
+
+    /**
+     * The {@code max} newest items, O(max).
+     */
+    public List<HistoryEntry> recent(int max) {
+        List<HistoryEntry> list = new ArrayList<>(Math.max(0, Math.min(max, size)));
+        for (Node n = head; n != null && list.size() < max; n = n.next) {
+            list.add(n.entry);
+        }
+        return list;
+    }
+
+    @Override
+    public Iterator<HistoryEntry> iterator() {
+        return new Iterator<>() {
+            private Node next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public HistoryEntry next() {
+                if (next == null) throw new NoSuchElementException();
+                HistoryEntry entry = next.entry;
+                next = next.next;
+                return entry;
+            }
+        };
+    }
+
+    private Node find(HistoryEntry entry) {
+        for (Node n = index.get(entry.getHash()); n != null; n = n.sameHash) {
+            if (n.entry.sameContent(entry)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    private void linkFirst(Node node) {
+        node.prev = null;
+        node.next = head;
+        if (head != null) {
+            head.prev = node;
+        } else {
+            tail = node;
+        }
+        head = node;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            head = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            tail = node.prev;
+        }
+        node.prev = node.next = null;
+    }
+
+    private void indexAdd(Node node) {
+        Node bucket = index.put(node.hash, node);
+        node.sameHash = bucket;
+    }
+
+    private void indexRemove(Node node) {
+        Node first = index.get(node.hash);
+        if (first == node) {
+            if (node.sameHash == null) {
+                index.remove(node.hash);
+            } else {
+                index.put(node.hash, node.sameHash);
+            }
+        } else {
+            for (Node n = first; n != null; n = n.sameHash) {
+                if (n.sameHash == node) {
+                    n.sameHash = node.sameHash;
+                    break;
+                }
+            }
+        }
+        node.sameHash = null;
+    }
+}
@@ -0,0 +1,13 @@
+package com.clipy.linux.history;
+
+import java.util.List;
+
+public interface HistoryListener {
+
+    /**
+     * Called with every change since the previous call, oldest first, and
+     * the snapshot they lead to. Bursts are coalesced into one call; a very
+     * long burst arrives as a single LOADED event.
+     */
+    void historyChanged(List<HistoryEvent> events, HistorySnapshot snapshot);
+}
@@ -0,0 +1,100 @@
+package com.clipy.linux.history;
+
+/**
+ * Decides what history keeps: applies {@link RetentionLimits}, keeps a
+ * running total of retained bytes and asks the {@link EvictionPolicy} what
+ * to drop when over budget.
+ *
+ * Not thread-safe; the owner (ClipboardService) calls it under its lock and
+ * reports every item that enters or leaves the history list.
+ */
+public class HistoryRetention {
+
+    private RetentionLimits limits;
+    private EvictionPolicy policy = EvictionPolicy.lru();
+    private long retainedBytes;
+
+    public HistoryRetention(RetentionLimits limits) {
+        this.limits = limits;
+    }
+
+    public RetentionLimits getLimits() {
+        return limits;
+    }
+
+    public void setLimits(RetentionLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Switch policies, telling the new one about every item in
+     * {@code history}.
+     */
+    public void setPolicy(EvictionPolicy policy, HistoryList history) {
+        this.policy = policy;
+        history.forEachOldestFirst(policy::added);
+    }
+
+    /**
+     * False if a clip of {@code length} chars is over the per-item cap.
+     */
+    public boolean accepts(int length) {
+        return limits.maxItemBytes() <= 0 || HistoryEntry.estimateBytes(length) <= limits.maxItemBytes();
+    }
+
+    public boolean expired(HistoryEntry entry, long now) {
+        return limits.maxAgeMillis() > 0 && entry.getTimestamp() < now - limits.maxAgeMillis();
+    }
+
+    /**
+     * True if {@code count} items (and the bytes added so far) exceed the
+     * budget.
+     */
+    public boolean overBudget(int count) {
+        return count > limits.maxItems()
+                || (limits.maxBytes() > 0 && retainedBytes > limits.maxBytes());
+    }
+
+    /**
+     * True if nothing more can be added without evicting.
+     */
+    public boolean isFull(int count) {
+        return count >= limits.maxItems()
+                || (limits.maxBytes() > 0 && retainedBytes >= limits.maxBytes());
+    }
+
+    /**
+     * Whether saved {@code entry} can be loaded behind {@code count} items
+     * without evicting anything.
+     */
+    public boolean fits(HistoryEntry entry, int count, long now) {
+        if (count >= limits.maxItems() || !accepts(entry.getLength()) || expired(entry, now)) {
+            return false;
+        }
+        return limits.maxBytes() <= 0
+                || retainedBytes + entry.getRetainedBytes() <= limits.maxBytes();
+    }
+
+    public void added(HistoryEntry entry, long seq) {
+        retainedBytes += entry.getRetainedBytes();
+        policy.added(entry, seq);
+    }
+
+    public void removed(HistoryEntry entry, long seq) {
+        retainedBytes -= entry.getRetainedBytes();
+        policy.removed(entry, seq);
+    }
+
+    public void cleared() {
+        retainedBytes = 0;
+        policy.clear();
+    }
+
+    public long victim(HistoryList history, long keepSeq) {
+        return policy.victim(history, keepSeq);
+    }
+
+    public HistoryUsage usage(int count) {
+        return new HistoryUsage(count, retainedBytes, limits.maxItems(), limits.maxBytes());
+    }
+}
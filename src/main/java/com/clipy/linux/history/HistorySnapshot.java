@@ -0,0 +1,305 @@
+package com.clipy.linux.history;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, versioned view of the clipboard history, newest item first.
+ *
+ * ClipboardService publishes one of these through a volatile field after
+ * every change, so readers never lock and never copy. Items are stored
+ * oldest-first in chunks of at most {@link #CHUNK} entries; an update copies
+ * the one chunk it touches plus the chunk spine and shares everything else
+ * with the previous snapshot.
+ *
+ * Each item keeps the sequence number it has in {@link HistoryList}, which
+ * is how promotes and evictions find it again.
+ */
+public final class HistorySnapshot extends AbstractList<HistoryEntry> implements RandomAccess {
+
+    static final int CHUNK = 64;
+
+    public static final HistorySnapshot EMPTY =
+            new HistorySnapshot(new Chunk[0], new int[0], 0L);
+
+    private static final class Chunk {
+        final HistoryEntry[] items; // oldest first
+        final long[] seqs;    // ascending, parallel to items
+
+        Chunk(HistoryEntry[] items, long[] seqs) {
+            this.items = items;
+            this.seqs = seqs;
+        }
+
+        int size() {
+            return items.length;
+        }
+
+        long firstSeq() {
+            return seqs[0];
+        }
+
+        long lastSeq() {
+            return seqs[seqs.length - 1];
+        }
+    }
+
+    private final Chunk[] chunks; // oldest chunk first
+    private final int[] ends;     // ends[i] = items in chunks[0..i]
+    private final long version;
+
+    private HistorySnapshot(Chunk[] chunks, int[] ends, long version) {
+        this.chunks = chunks;
+        this.ends = ends;
+        this.version = version;
+    }
+
+    /**
+     * Build a snapshot of {@code list} in one O(n) pass.
+     */
+    public static HistorySnapshot of(HistoryList list, long version) {
+        int n = list.size();
+        int chunkCount = (n + CHUNK - 1) / CHUNK;
+        Chunk[] chunks = new Chunk[chunkCount];
+        int[] ends = new int[chunkCount];
+        int[] pos = new int[1];
+        HistoryEntry[][] items = new HistoryEntry[1][];
+        long[][] seqs = new long[1][];
+        list.forEachOldestFirst((entry, seq) -> {
+            int i = pos[0]++;
+            int c = i / CHUNK;
+            int off = i % CHUNK;
+            if (off == 0) {
+                int len = Math.min(CHUNK, n - i);
+                items[0] = new HistoryEntry[len];
+                seqs[0] = new long[len];
+                chunks[c] = new Chunk(items[0], seqs[0]);
+                ends[c] = i + len;
+            }
+            items[0][off] = entry;
+            seqs[0][off] = seq;
+        });
+        return new HistorySnapshot(chunks, ends, version);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public HistorySnapshot withVersion(long newVersion) {
+        return new HistorySnapshot(chunks, ends, newVersion);
+    }
+
+    @Override
+    public int size() {
+        return ends.length == 0 ? 0 : ends[ends.length - 1];
+    }
+
+    /**
+     * @param index 0 is the newest item
+     */
+    @Override
+    public HistoryEntry get(int index) {
+        int size = size();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int pos = size - 1 - index;
+        int c = chunkFor(pos);
+        int start = c == 0 ? 0 : ends[c - 1];
+        return chunks[c].items[pos - start];
+    }
+
+    /**
+     * Newest-first position of the item with sequence number {@code seq},
+     * or -1 if it is not in this snapshot. O(log n).
+     */
+    public int indexOfSeq(long seq) {
+        int c = chunkForSeq(seq);
+        if (c < 0) return -1;
+        int off = Arrays.binarySearch(chunks[c].seqs, seq);
+        if (off < 0) return -1;
+        int start = c == 0 ? 0 : ends[c - 1];
+        return size() - 1 - (start + off);
+    }
+
+    /**
+     * Add {@code entry} as the newest item. {@code seq} must be greater than
+     * every sequence number already present.
+     */
+    public HistorySnapshot withFirst(HistoryEntry entry, long seq) {
+        int last = chunks.length - 1;
+        if (last >= 0 && chunks[last].size() < CHUNK) {
+            Chunk old = chunks[last];
+            HistoryEntry[] items = Arrays.copyOf(old.items, old.size() + 1);
+            long[] seqs = Arrays.copyOf(old.seqs, old.size() + 1);
+            items[old.size()] = entry;
+            seqs[old.size()] = seq;
+            Chunk[] newChunks = chunks.clone();
+            newChunks[last] = new Chunk(items, seqs);
+            int[] newEnds = ends.clone();
+            newEnds[last]++;
+            return new HistorySnapshot(newChunks, newEnds, version);
+        }
+        Chunk[] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+        int[] newEnds = Arrays.copyOf(ends, ends.length + 1);
+        newChunks[chunks.length] = new Chunk(new HistoryEntry[]{entry}, new long[]{seq});
+        newEnds[ends.length] = size() + 1;
+        return new HistorySnapshot(newChunks, newEnds, version);
+    }
+
+    /**
+     * Add several items behind the oldest one in a single step, O(k + n/CHUNK).
+     *
+     * @param entries newest first
+     * @param seqs  matching sequence numbers, descending and all smaller
+     *              than every sequence number already present
+     */
+    public HistorySnapshot withLastAll(List<HistoryEntry> entries, long[] seqs) {
+        int k = entries.size();
+        if (k == 0) return this;
+        int added = (k + CHUNK - 1) / CHUNK;
+        Chunk[] newChunks = new Chunk[added + chunks.length];
+        int[] newEnds = new int[added + chunks.length];
+        // entries[k-1] is the oldest and goes first
+        for (int c = 0; c < added; c++) {
+            int start = c * CHUNK;
+            int len = Math.min(CHUNK, k - start);
+            HistoryEntry[] items = new HistoryEntry[len];
+            long[] chunkSeqs = new long[len];
+            for (int i = 0; i < len; i++) {
+                int src = k - 1 - (start + i);
+                items[i] = entries.get(src);
+                chunkSeqs[i] = seqs[src];
+            }
+            newChunks[c] = new Chunk(items, chunkSeqs);
+            newEnds[c] = start + len;
+        }
+        System.arraycopy(chunks, 0, newChunks, added, chunks.length);
+        for (int i = 0; i < ends.length; i++) {
+            newEnds[added + i] = ends[i] + k;
+        }
+        return new HistorySnapshot(newChunks, newEnds, version);
+    }
+
+    /**
+     * Drop the item with sequence number {@code seq}; returns this snapshot
+     * unchanged if it is not present.
+     */
+    public HistorySnapshot without(long seq) {
+        int c = chunkForSeq(seq);
+        if (c < 0) return this;
+        Chunk old = chunks[c];
+        int off = Arrays.binarySearch(old.seqs, seq);
+        if (off < 0) return this;
+
+        int len = old.size() - 1;
+        HistoryEntry[] items = new HistoryEntry[len];
+        long[] seqs = new long[len];
+        System.arraycopy(old.items, 0, items, 0, off);
+        System.arraycopy(old.items, off + 1, items, off, len - off);
+        System.arraycopy(old.seqs, 0, seqs, 0, off);
+        System.arraycopy(old.seqs, off + 1, seqs, off, len - off);
+        Chunk shrunk = new Chunk(items, seqs);
+
+        // Merge with a neighbour when both fit in one chunk, so repeated
+        // removals from the middle do not leave a long tail of tiny chunks.
+        if (c + 1 < chunks.length && len + chunks[c + 1].size() <= CHUNK) {
+            return replace(c, 2, concat(shrunk, chunks[c + 1]));
+        }
+        if (c > 0 && chunks[c - 1].size() + len <= CHUNK) {
+            return replace(c - 1, 2, concat(chunks[c - 1], shrunk));
+        }
+        return replace(c, 1, len == 0 ? null : shrunk);
+    }
+
+    @Override
+    public Iterator<HistoryEntry> iterator() {
+        return new Iterator<>() {
+            private int c = chunks.length - 1;
+            private int off = c >= 0 ? chunks[c].size() - 1 : -1;
+
+            @Override
+            public boolean hasNext() {
+                return c >= 0;
+            }
+
+            @Override
+            public HistoryEntry next() {
+                if (c < 0) throw new NoSuchElementException();
+                HistoryEntry entry = chunks[c].items[off];
+                if (--off < 0 && --c >= 0) {
+                    off = chunks[c].size() - 1;
+                }
+                return entry;
+            }
+        };
+    }
+
+    private static Chunk concat(Chunk a, Chunk b) {
+        HistoryEntry[] items = Arrays.copyOf(a.items, a.size() + b.size());
+        long[] seqs = Arrays.copyOf(a.seqs, a.size() + b.size());
+        System.arraycopy(b.items, 0, items, a.size(), b.size());
+        System.arraycopy(b.seqs, 0, seqs, a.size(), b.size());
+        return new Chunk(items, seqs);
+    }
+
+    /**
+     * Replace {@code count} chunks starting at {@code from} with
+     * {@code chunk} (or with nothing if it is null).
+     */
+    private HistorySnapshot replace(int from, int count, Chunk chunk) {
+        int added = chunk == null ? 0 : 1;
+        int newLen = chunks.length - count + added;
+        Chunk[] newChunks = new Chunk[newLen];
+        int[] newEnds = new int[newLen];
+        System.arraycopy(chunks, 0, newChunks, 0, from);
+        System.arraycopy(ends, 0, newEnds, 0, from);
+        if (chunk != null) {
+            newChunks[from] = chunk;
+        }
+        System.arraycopy(chunks, from + count, newChunks, from + added,
+                chunks.length - from - count);
+        int running = from == 0 ? 0 : ends[from - 1];
+        for (int i = from; i < newLen; i++) {
+            running += newChunks[i].size();
+            newEnds[i] = running;
+        }
+        return new HistorySnapshot(newChunks, newEnds, version);
+    }
+
+    private int chunkFor(int pos) {
+        int lo = 0;
+        int hi = ends.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] > pos) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private int chunkForSeq(long seq) {
+        int lo = 0;
+        int hi = chunks.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Chunk chunk = chunks[mid];
+            if (seq < chunk.firstSeq()) {
+                hi = mid - 1;
+            } else if (seq > chunk.lastSeq()) {
+                lo = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
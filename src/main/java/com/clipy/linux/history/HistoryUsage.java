@@ -0,0 +1,25 @@
+package com.clipy.linux.history;
+
+/**
+ * How much of its budget the history currently uses.
+ *
+ * @param maxBytes 0 if there is no byte budget
+ */
+public record HistoryUsage(int items, long bytes, int maxItems, long maxBytes) {
+
+    /**
+     * E.g. "523 of 1000 items, 12.4 MB of 256 MB".
+     */
+    public String describe() {
+        String text = items + " of " + maxItems + " items, " + size(bytes);
+        return maxBytes > 0 ? text + " of " + size(maxBytes) : text;
+    }
+
+    private static String size(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return (bytes + 1023) / 1024 + " KB";
+        }
+        double mb = bytes / (1024.0 * 1024.0);
+        return mb < 10 ? String.format("%.1f MB", mb) : String.format("%.0f MB", mb);
+    }
+}
@@ -0,0 +1,58 @@
+package com.clipy.linux.history;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * Evicts the item with the lowest rank, ties going to the older sequence
+ * number. O(log n) per change.
+ */
+final class RankedEvictionPolicy implements EvictionPolicy {
+
+    private record Slot(long rank, long seq) implements Comparable<Slot> {
+        @Override
+        public int compareTo(Slot o) {
+            int c = Long.compare(rank, o.rank);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private final ToLongFunction<HistoryEntry> rank;
+    private final TreeSet<Slot> order = new TreeSet<>();
+    private final Map<Long, Slot> bySeq = new HashMap<>();
+
+    RankedEvictionPolicy(ToLongFunction<HistoryEntry> rank) {
+        this.rank = rank;
+    }
+
+    @Override
+    public void added(HistoryEntry entry, long seq) {
+        Slot slot = new Slot(rank.applyAsLong(entry), seq);
+        order.add(slot);
+        bySeq.put(seq, slot);
+    }
+
+    @Override
+    public void removed(HistoryEntry entry, long seq) {
+        Slot slot = bySeq.remove(seq);
+        if (slot != null) {
+            order.remove(slot);
+        }
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+        bySeq.clear();
+    }
+
+    @Override
+    public long victim(HistoryList history, long keepSeq) {
+        for (Slot slot : order) {
+            if (slot.seq() != keepSeq) return slot.seq();
+        }
+        return HistoryList.NO_SEQ;
+    }
+}
@@ -0,0 +1,18 @@
+package com.clipy.linux.history;
+
+/**
+ * How much history to keep. Zero means no limit for everything except
+ * {@code maxItems}.
+ *
+ * @param maxItems     most items kept
+ * @param maxBytes     most {@link HistoryEntry#getRetainedBytes() bytes}
+ *                     kept across all items
+ * @param maxAgeMillis items not copied for longer than this are dropped
+ * @param maxItemBytes clips bigger than this are not recorded at all
+ */
+public record RetentionLimits(int maxItems, long maxBytes, long maxAgeMillis, long maxItemBytes) {
+
+    public static RetentionLimits items(int maxItems) {
+        return new RetentionLimits(maxItems, 0, 0, 0);
+    }
+}
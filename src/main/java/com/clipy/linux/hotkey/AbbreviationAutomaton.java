@@ -0,0 +1,186 @@
+package com.clipy.linux.hotkey;
+
+import com.clipy.linux.model.Snippet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snippet abbreviations compiled into an Aho-Corasick automaton, with the
+ * failure links folded into a full transition table: feeding a typed
+ * character is one table read, and a state tells at once whether some
+ * abbreviation ends there.
+ *
+ * Only characters that occur in an abbreviation get a column; any other
+ * character maps to column 0. Immutable once built; {@link #update}
+ * shares the tables with the next automaton when only the snippets'
+ * names or contents changed.
+ */
+final class AbbreviationAutomaton {
+
+    static final AbbreviationAutomaton EMPTY = new AbbreviationAutomaton(List.of(), -1);
+
+    final long version;
+    private final char[] columnOf;
+    private final int columns;
+    private final int[] next;      // state * columns + column -> state
+    private final int[] matchOf;   // state -> snippet index ending there, or -1
+    private final Snippet[] snippets;
+    private final int[] lengths;
+
+    /**
+     * @param snippets snippets to take abbreviations from; those without
+     *                 one are skipped, and the first of a duplicate wins
+     */
+    AbbreviationAutomaton(List<Snippet> snippets, long version) {
+        this(withAbbreviations(snippets), version);
+    }
+
+    // Same tables as base, for snippets with the same abbreviations.
+    private AbbreviationAutomaton(AbbreviationAutomaton base, Snippet[] snippets, long version) {
+        this.version = version;
+        this.columnOf = base.columnOf;
+        this.columns = base.columns;
+        this.next = base.next;
+        this.matchOf = base.matchOf;
+        this.lengths = base.lengths;
+        this.snippets = snippets;
+    }
+
+    private AbbreviationAutomaton(Snippet[] snippets, long version) {
+        this.version = version;
+        this.snippets = snippets;
+        this.lengths = new int[snippets.length];
+        this.columnOf = new char[Character.MAX_VALUE + 1];
+        List<String> words = new ArrayList<>(snippets.length);
+        for (Snippet s : snippets) {
+            words.add(s.getAbbreviation());
+        }
+
+        int cols = 1;
+        int totalChars = 0;
+        for (int w = 0; w < words.size(); w++) {
+            String word = words.get(w);
+            lengths[w] = word.length();
+            totalChars += word.length();
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (columnOf[c] == 0) columnOf[c] = (char) cols++;
+            }
+        }
+        this.columns = cols;
+
+        // trie; 0 in next means "no edge yet" since the root is never a target
+        int[] trie = new int[(totalChars + 1) * cols];
+        int[] match = new int[totalChars + 1];
+        Arrays.fill(match, -1);
+        int states = 1;
+        for (int w = 0; w < words.size(); w++) {
+            String word = words.get(w);
+            int s = 0;
+            for (int i = 0; i < word.length(); i++) {
+                int slot = s * cols + columnOf[word.charAt(i)];
+                if (trie[slot] == 0) trie[slot] = states++;
+                s = trie[slot];
+            }
+            match[s] = w;
+        }
+
+        // breadth-first: missing edges follow the failure link, whose
+        // row is already complete
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < cols; c++) {
+            int t = trie[c];
+            if (t != 0) {
+                fail[t] = 0;
+                queue.add(t);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            if (match[s] < 0) match[s] = match[fail[s]];
+            for (int c = 0; c < cols; c++) {
+                int slot = s * cols + c;
+                int t = trie[slot];
+                if (t != 0) {
+                    fail[t] = trie[fail[s] * cols + c];
+                    queue.add(t);
+                } else {
+                    trie[slot] = trie[fail[s] * cols + c];
+                }
+            }
+        }
+        this.next = Arrays.copyOf(trie, states * cols);
+        this.matchOf = Arrays.copyOf(match, states);
+    }
+
+    /**
+     * The automaton for {@code snippets}. If their abbreviations are the
+     * ones this automaton has, in the same order, its tables are reused
+     * and only the snippets are swapped; otherwise it is built anew.
+     */
+    AbbreviationAutomaton update(List<Snippet> snippets, long version) {
+        Snippet[] kept = withAbbreviations(snippets);
+        if (kept.length != this.snippets.length) return new AbbreviationAutomaton(kept, version);
+        for (int i = 0; i < kept.length; i++) {
+            if (!kept[i].getAbbreviation().equals(this.snippets[i].getAbbreviation())) {
+                return new AbbreviationAutomaton(kept, version);
+            }
+        }
+        return new AbbreviationAutomaton(this, kept, version);
+    }
+
+    /**
+     * Whether states of {@code other} mean the same here.
+     */
+    boolean sharesStates(AbbreviationAutomaton other) {
+        return next == other.next;
+    }
+
+    // Snippets that have an abbreviation, the first of a duplicate winning.
+    private static Snippet[] withAbbreviations(List<Snippet> snippets) {
+        List<Snippet> kept = new ArrayList<>();
+        Map<String, Snippet> seen = new HashMap<>();
+        for (Snippet s : snippets) {
+            String abbreviation = s.getAbbreviation();
+            if (abbreviation == null) continue;
+            Snippet first = seen.putIfAbsent(abbreviation, s);
+            if (first != null) {
+                System.err.println("Abbreviation " + abbreviation + " is used by both \""
+                        + first.getName() + "\" and \"" + s.getName() + "\", keeping the first");
+                continue;
+            }
+            kept.add(s);
+        }
+        return kept.toArray(new Snippet[0]);
+    }
+
+    int size() {
+        return snippets.length;
+    }
+
+    int step(int state, char c) {
+        return next[state * columns + columnOf[c]];
+    }
+
+    /**
+     * Index of the abbreviation that was just completed in {@code state},
+     * or -1.
+     */
+    int matchAt(int state) {
+        return matchOf[state];
+    }
+
+    Snippet snippet(int match) {
+        return snippets[match];
+    }
+
+    int length(int match) {
+        return lengths[match];
+    }
+}
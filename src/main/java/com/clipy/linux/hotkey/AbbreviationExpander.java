@@ -0,0 +1,148 @@
+package com.clipy.linux.hotkey;
+
+import com.clipy.linux.model.Snippet;
+import com.clipy.linux.model.SnippetsModel;
+import com.clipy.linux.paste.PasteEngine;
+import com.clipy.linux.template.SnippetRenderer;
+import com.github.kwhat.jnativehook.NativeInputEvent;
+import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
+import com.github.kwhat.jnativehook.keyboard.NativeKeyListener;
+import com.github.kwhat.jnativehook.mouse.NativeMouseEvent;
+import com.github.kwhat.jnativehook.mouse.NativeMouseListener;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Replaces a snippet abbreviation typed in any application, e.g. ";sig",
+ * with the snippet: the abbreviation is erased with backspaces and the
+ * rendered snippet pasted in its place.
+ *
+ * Every key typed system-wide passes through here on the hook thread, so
+ * a key costs one automaton step and no allocation. The automaton states
+ * of the last {@link #RING_SIZE} keys sit in a ring buffer, so Backspace
+ * steps back instead of losing track; keys that move the caret or edit
+ * elsewhere start over, and so does a mouse click, which may move the
+ * caret or focus (the hook delivers it on the same thread). When the
+ * snippets change, the automaton is updated on the "abbreviations"
+ * thread and swapped in; if no abbreviation changed it keeps its tables,
+ * and what was typed so far still counts.
+ */
+public class AbbreviationExpander implements NativeKeyListener, NativeMouseListener {
+
+    private static final int RING_SIZE = 64; // power of two
+    private static final int COMMAND_MASK =
+            NativeInputEvent.CTRL_MASK | NativeInputEvent.ALT_MASK | NativeInputEvent.META_MASK;
+
+    private final SnippetsModel snippetsModel;
+    private final PasteEngine pasteEngine;
+    private final SnippetRenderer renderer;
+    private final ExecutorService thread;
+    private volatile AbbreviationAutomaton automaton = AbbreviationAutomaton.EMPTY;
+    private volatile boolean rebuilding;
+    private volatile boolean enabled = true;
+
+    // hook thread only
+    private AbbreviationAutomaton current = AbbreviationAutomaton.EMPTY;
+    private final int[] states = new int[RING_SIZE];
+    private int top;   // index of the current state
+    private int depth; // states that Backspace can go back to
+
+    public AbbreviationExpander(SnippetsModel snippetsModel, PasteEngine pasteEngine,
+                                SnippetRenderer renderer) {
+        this.snippetsModel = snippetsModel;
+        this.pasteEngine = pasteEngine;
+        this.renderer = renderer;
+        this.thread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "abbreviations");
+            t.setDaemon(true);
+            return t;
+        });
+        thread.execute(this::rebuild);
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void close() {
+        thread.shutdownNow();
+    }
+
+    @Override
+    public void nativeKeyTyped(NativeKeyEvent e) {
+        char c = e.getKeyChar();
+        if (c == '\b' || pasteEngine.isSendingKeys()) return; // see nativeKeyPressed
+        if (!enabled || (e.getModifiers() & COMMAND_MASK) != 0 || Character.isISOControl(c)) {
+            reset();
+            return;
+        }
+        AbbreviationAutomaton a = automaton;
+        if (a != current) {
+            // states of an automaton built anew mean nothing in the new one
+            if (!a.sharesStates(current)) reset();
+            current = a;
+        }
+        if (a.version != snippetsModel.getVersion() && !rebuilding) {
+            rebuilding = true;
+            thread.execute(this::rebuild);
+        }
+        int state = a.step(states[top], c);
+        top = (top + 1) & (RING_SIZE - 1);
+        states[top] = state;
+        if (depth < RING_SIZE - 1) depth++;
+
+        int match = a.matchAt(state);
+        if (match >= 0) {
+            Snippet snippet = a.snippet(match);
+            int typed = a.length(match);
+            reset();
+            // placeholders may read the clipboard; not on the hook thread
+            thread.execute(() -> {
+                SnippetRenderer.Rendered r = renderer.render(snippet);
+                pasteEngine.replaceTyped(typed, r.text(), r.caretBack());
+            });
+        }
+    }
+
+    @Override
+    public void nativeKeyPressed(NativeKeyEvent e) {
+        if (pasteEngine.isSendingKeys()) return;
+        switch (e.getKeyCode()) {
+            case NativeKeyEvent.VC_BACKSPACE -> {
+                if (depth > 0) {
+                    top = (top - 1) & (RING_SIZE - 1);
+                    depth--;
+                } else {
+                    reset();
+                }
+            }
+            case NativeKeyEvent.VC_ENTER, NativeKeyEvent.VC_TAB, NativeKeyEvent.VC_ESCAPE,
+                    NativeKeyEvent.VC_LEFT, NativeKeyEvent.VC_RIGHT, NativeKeyEvent.VC_UP,
+                    NativeKeyEvent.VC_DOWN, NativeKeyEvent.VC_HOME, NativeKeyEvent.VC_END,
+                    NativeKeyEvent.VC_PAGE_UP, NativeKeyEvent.VC_PAGE_DOWN,
+                    NativeKeyEvent.VC_DELETE -> reset();
+            default -> {
+            }
+        }
+    }
+
+    @Override
+    public void nativeMousePressed(NativeMouseEvent e) {
+        reset();
+    }
+
+    private void reset() {
+        states[top] = 0;
+        depth = 0;
+    }
+
+    private void rebuild() {
+        try {
+            long version = snippetsModel.getVersion();
+            automaton = automaton.update(snippetsModel.getSnippetsSnapshot(), version);
+        } finally {
+            rebuilding = false;
+        }
+    }
+}
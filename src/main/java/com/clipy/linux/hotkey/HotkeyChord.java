@@ -0,0 +1,100 @@
+package com.clipy.linux.hotkey;
+
+import com.github.kwhat.jnativehook.NativeInputEvent;
+import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A key plus modifiers, e.g. "Ctrl+Shift+Space". Keys are named as in
+ * JNativeHook's VC_ constants without the prefix (Space, V, F1, ...),
+ * case-insensitively.
+ *
+ * @param modifiers {@link #CTRL}, {@link #SHIFT}, {@link #ALT} and {@link #META} bits
+ * @param keyCode   a NativeKeyEvent VC_ code
+ */
+public record HotkeyChord(int modifiers, int keyCode) {
+
+    public static final int CTRL = 1;
+    public static final int SHIFT = 2;
+    public static final int ALT = 4;
+    public static final int META = 8;
+
+    private static Map<String, Integer> keyCodes;
+
+    /**
+     * @throws IllegalArgumentException if a part is not a known modifier
+     *                                  or key, or there is no key
+     */
+    public static HotkeyChord parse(String text) {
+        int modifiers = 0;
+        int keyCode = NativeKeyEvent.VC_UNDEFINED;
+        for (String part : text.split("\\+")) {
+            String name = part.trim().toUpperCase(Locale.ROOT);
+            switch (name) {
+                case "CTRL", "CONTROL" -> modifiers |= CTRL;
+                case "SHIFT" -> modifiers |= SHIFT;
+                case "ALT" -> modifiers |= ALT;
+                case "META", "SUPER", "WIN" -> modifiers |= META;
+                default -> {
+                    Integer code = keyCodes().get(name);
+                    if (code == null || keyCode != NativeKeyEvent.VC_UNDEFINED) {
+                        throw new IllegalArgumentException("Bad hotkey \"" + text + "\" at \"" + part.trim() + "\"");
+                    }
+                    keyCode = code;
+                }
+            }
+        }
+        if (keyCode == NativeKeyEvent.VC_UNDEFINED) {
+            throw new IllegalArgumentException("Hotkey \"" + text + "\" has no key");
+        }
+        return new HotkeyChord(modifiers, keyCode);
+    }
+
+    /**
+     * Our modifier bits for a native event's modifiers, left and right
+     * keys alike; lock and mouse button state is ignored.
+     */
+    static int modifiersOf(int nativeModifiers) {
+        int m = 0;
+        if ((nativeModifiers & NativeInputEvent.CTRL_MASK) != 0) m |= CTRL;
+        if ((nativeModifiers & NativeInputEvent.SHIFT_MASK) != 0) m |= SHIFT;
+        if ((nativeModifiers & NativeInputEvent.ALT_MASK) != 0) m |= ALT;
+        if ((nativeModifiers & NativeInputEvent.META_MASK) != 0) m |= META;
+        return m;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if ((modifiers & CTRL) != 0) sb.append("Ctrl+");
+        if ((modifiers & SHIFT) != 0) sb.append("Shift+");
+        if ((modifiers & ALT) != 0) sb.append("Alt+");
+        if ((modifiers & META) != 0) sb.append("Meta+");
+        return sb.append(NativeKeyEvent.getKeyText(keyCode)).toString();
+    }
+
+    // VC_ constant names without the prefix, read once.
+    private static synchronized Map<String, Integer> keyCodes() {
+        if (keyCodes == null) {
+            Map<String, Integer> codes = new HashMap<>();
+            for (Field f : NativeKeyEvent.class.getFields()) {
+                if (f.getName().startsWith("VC_") && f.getType() == int.class
+                        && Modifier.isStatic(f.getModifiers())) {
+                    try {
+                        codes.put(f.getName().substring(3), f.getInt(null));
+                    } catch (IllegalAccessException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            codes.remove("UNDEFINED");
+            keyCodes = codes;
+        }
+        return keyCodes;
+    }
+}
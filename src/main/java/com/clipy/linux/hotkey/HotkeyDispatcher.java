@@ -0,0 +1,183 @@
+package com.clipy.linux.hotkey;
+
+import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
+import com.github.kwhat.jnativehook.keyboard.NativeKeyListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Global hotkeys: a table of chords, each bound to a named action.
+ *
+ * Matching runs on JNativeHook's dispatch thread for every key press in
+ * every application, so it allocates nothing: a bitset of the bound key
+ * codes turns away almost every key with one array read, and the few
+ * bound chords are then compared by key code and modifier bits. A match
+ * is handed to the "hotkey" thread, so a slow action never holds up the
+ * hook.
+ *
+ * An action gets a callback to run once its window is visible; the time
+ * from the key press to that callback is the hotkey latency.
+ */
+public class HotkeyDispatcher implements NativeKeyListener {
+
+    public static final String LAUNCHER = "launcher";
+    public static final String HISTORY = "history";
+
+    private final Map<String, Consumer<Runnable>> actions = new ConcurrentHashMap<>();
+    private final ExecutorService thread;
+    private volatile Table table = new Table(List.of(), List.of());
+
+    // key of the last chord fired, until it is released; hook thread only
+    private int heldKeyCode = -1;
+
+    private volatile long lastLatencyMillis = -1;
+    private volatile long maxLatencyMillis = -1;
+    private volatile String slowestAction;
+
+    public HotkeyDispatcher() {
+        this.thread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "hotkey");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Run {@code action} when the chord for {@code name} is pressed. It gets
+     * a callback to run once it is done, e.g. when its window shows.
+     */
+    public void bind(String name, Consumer<Runnable> action) {
+        actions.put(name, action);
+    }
+
+    /**
+     * Replace the chord table. Maps action names to chords such as
+     * "Ctrl+Shift+Space"; blank chords are unbound, bad ones reported
+     * and skipped.
+     */
+    public void setChords(Map<String, String> chords) {
+        List<String> names = new ArrayList<>();
+        List<HotkeyChord> parsed = new ArrayList<>();
+        for (Map.Entry<String, String> e : chords.entrySet()) {
+            if (e.getValue() == null || e.getValue().isBlank()) continue;
+            try {
+                HotkeyChord chord = HotkeyChord.parse(e.getValue());
+                int taken = parsed.indexOf(chord);
+                if (taken >= 0) {
+                    System.err.println("Hotkey " + chord + " is already used for " + names.get(taken)
+                            + ", not binding it to " + e.getKey());
+                    continue;
+                }
+                names.add(e.getKey());
+                parsed.add(chord);
+            } catch (IllegalArgumentException ex) {
+                System.err.println(ex.getMessage() + ", " + e.getKey() + " has no hotkey");
+            }
+        }
+        table = new Table(names, parsed);
+    }
+
+    /**
+     * Milliseconds from the last hotkey press to its window being visible,
+     * or -1 before the first one.
+     */
+    public long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    /**
+     * The action of the slowest hotkey so far, or null before the first.
+     */
+    public String getSlowestAction() {
+        return slowestAction;
+    }
+
+    public void close() {
+        thread.shutdownNow();
+    }
+
+    @Override
+    public void nativeKeyPressed(NativeKeyEvent e) {
+        int keyCode = e.getKeyCode();
+        Table t = table;
+        if (!t.mayMatch(keyCode)) return;
+        int i = t.find(keyCode, HotkeyChord.modifiersOf(e.getModifiers()));
+        // holding the chord down repeats the press; fire once
+        if (i < 0 || keyCode == heldKeyCode) return;
+        heldKeyCode = keyCode;
+        long pressed = System.nanoTime();
+        String name = t.names[i];
+        thread.execute(() -> fire(name, pressed));
+    }
+
+    @Override
+    public void nativeKeyReleased(NativeKeyEvent e) {
+        if (e.getKeyCode() == heldKeyCode) {
+            heldKeyCode = -1;
+        }
+    }
+
+    private void fire(String name, long pressed) {
+        Consumer<Runnable> action = actions.get(name);
+        if (action == null) return;
+        try {
+            action.accept(() -> record(name, pressed));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void record(String name, long pressed) {
+        long millis = (System.nanoTime() - pressed) / 1_000_000;
+        lastLatencyMillis = millis;
+        if (millis > maxLatencyMillis) {
+            maxLatencyMillis = millis;
+            slowestAction = name;
+        }
+    }
+
+    /**
+     * Bound chords, immutable so the hook thread can read it without
+     * locking.
+     */
+    private static final class Table {
+        private final long[] keyBits = new long[1024]; // one bit per 16-bit key code
+        private final int[] keyCodes;
+        private final int[] modifiers;
+        private final String[] names;
+
+        Table(List<String> names, List<HotkeyChord> chords) {
+            int n = chords.size();
+            this.names = names.toArray(new String[0]);
+            this.keyCodes = new int[n];
+            this.modifiers = new int[n];
+            for (int i = 0; i < n; i++) {
+                int code = chords.get(i).keyCode() & 0xFFFF;
+                keyCodes[i] = code;
+                modifiers[i] = chords.get(i).modifiers();
+                keyBits[code >>> 6] |= 1L << code;
+            }
+        }
+
+        boolean mayMatch(int keyCode) {
+            return (keyBits[(keyCode & 0xFFFF) >>> 6] & 1L << keyCode) != 0;
+        }
+
+        int find(int keyCode, int mods) {
+            for (int i = 0; i < keyCodes.length; i++) {
+                if (keyCodes[i] == keyCode && modifiers[i] == mods) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.clipy.linux.model;
 import java.util.List;
 
 public class HistoryModel {
+    // which history.journal generation continues from this checkpoint
+    public long generation;
     public List<String> items;
 
     public HistoryModel() {
@@ -11,4 +13,9 @@ public class HistoryModel {
     public HistoryModel(List<String> items) {
         this.items = items;
     }
+
+    public HistoryModel(List<String> items, long generation) {
+        this.items = items;
+        this.generation = generation;
+    }
 }
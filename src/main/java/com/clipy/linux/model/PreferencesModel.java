@@ -1,9 +1,24 @@
 package com.clipy.linux.model;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class PreferencesModel {
     public int maxHistory;
     public int maxTrayItems;
     public boolean plainTextOnly;
+    // history retention; 0 means no limit
+    public int maxHistoryMb = 256;
+    public int maxItemKb = 32 * 1024;
+    public int maxAgeDays;
+    // LRU, OLDEST_FIRST or LARGEST_FIRST
+    public String evictionPolicy = "LRU";
+    // pause between the keys of a synthetic Ctrl+V
+    public int pasteKeyDelayMs = 5;
+    // type a snippet by its abbreviation, see Snippet.getAbbreviation()
+    public boolean expandAbbreviations = true;
+    // global hotkeys, action name -> chord like "Ctrl+Shift+Space"; blank = none
+    public Map<String, String> hotkeys = defaultHotkeys();
 
     public PreferencesModel() {
     }
@@ -14,6 +29,13 @@ public class PreferencesModel {
         this.plainTextOnly = plainTextOnly;
     }
 
+    public static Map<String, String> defaultHotkeys() {
+        Map<String, String> m = new LinkedHashMap<>();
+        m.put("launcher", "Ctrl+Shift+Space");
+        m.put("history", "");
+        return m;
+    }
+
     public static PreferencesModel defaultPrefs() {
         return new PreferencesModel(100, 10, true);
     }
@@ -4,6 +4,8 @@ import java.util.Objects;
 
 public class Snippet {
 
+    public static final String ABBREVIATION_PREFIX = ";";
+
     private String id;
     private String folder;   // e.g. "My Snippets"
     private String name;     // label shown in menus
@@ -51,6 +53,20 @@ public class Snippet {
         this.content = content;
     }
 
+    /**
+     * The abbreviation that types this snippet: the first word of its name
+     * if that starts with {@link #ABBREVIATION_PREFIX}, e.g. ";sig" for a
+     * snippet named ";sig Email signature". Null if there is none.
+     */
+    public String getAbbreviation() {
+        if (name == null || !name.startsWith(ABBREVIATION_PREFIX)) return null;
+        int end = 0;
+        while (end < name.length() && !Character.isWhitespace(name.charAt(end))) {
+            end++;
+        }
+        return end > ABBREVIATION_PREFIX.length() ? name.substring(0, end) : null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
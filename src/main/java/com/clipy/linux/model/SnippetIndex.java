@@ -0,0 +1,150 @@
+package com.clipy.linux.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Folder-to-snippets index behind {@link SnippetsModel}: folders sorted by
+ * name (case-insensitive), and each folder's snippets sorted by name.
+ * Kept up to date one snippet at a time; the folder list is cached until
+ * the set of folders changes.
+ *
+ * Folders stay in the index when their last snippet goes, so a folder
+ * created with {@link #addFolder} needs no placeholder snippet.
+ */
+final class SnippetIndex {
+
+    private static final Comparator<String> FOLDER_ORDER =
+            String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+    private static final Comparator<Snippet> NAME_ORDER = Comparator.comparing(Snippet::getName,
+            Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+
+    private final TreeMap<String, List<Snippet>> folders = new TreeMap<>(FOLDER_ORDER);
+    // folder each snippet is filed under, which may lag behind its field
+    private final Map<Snippet, String> folderOf = new IdentityHashMap<>();
+    private List<String> folderNames;
+
+    /**
+     * Re-index {@code snippets} from scratch, keeping the known folders.
+     */
+    void rebuild(Collection<Snippet> snippets) {
+        folderOf.clear();
+        for (List<Snippet> list : folders.values()) {
+            list.clear();
+        }
+        for (Snippet s : snippets) {
+            String folder = s.getFolder();
+            if (!isFolderName(folder)) continue;
+            folder(folder).add(s);
+            folderOf.put(s, folder);
+        }
+        for (List<Snippet> list : folders.values()) {
+            list.sort(NAME_ORDER);
+        }
+    }
+
+    void add(Snippet s) {
+        String folder = s.getFolder();
+        if (!isFolderName(folder)) return;
+        List<Snippet> list = folder(folder);
+        list.add(insertionPoint(list, s), s);
+        folderOf.put(s, folder);
+    }
+
+    void remove(Snippet s) {
+        String folder = folderOf.remove(s);
+        if (folder == null) return;
+        List<Snippet> list = folders.get(folder);
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i) == s) {
+                list.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Move {@code s} to where its current folder and name put it.
+     */
+    void update(Snippet s) {
+        remove(s);
+        add(s);
+    }
+
+    boolean addFolder(String folder) {
+        if (!isFolderName(folder) || folders.containsKey(folder)) return false;
+        folder(folder);
+        return true;
+    }
+
+    /**
+     * Re-file everything under {@code oldName} (whose folder fields already
+     * say {@code newName}) and drop the old folder. Does nothing if
+     * {@code newName} is not a folder name.
+     */
+    void renameFolder(String oldName, String newName) {
+        if (!isFolderName(newName)) return;
+        List<Snippet> moved = folders.remove(oldName);
+        folderNames = null;
+        List<Snippet> target = folder(newName);
+        if (moved == null) return;
+        for (Snippet s : moved) {
+            folderOf.put(s, newName);
+        }
+        target.addAll(moved);
+        target.sort(NAME_ORDER);
+    }
+
+    /**
+     * Sorted folder names; the same immutable list until folders change.
+     */
+    List<String> folderNames() {
+        if (folderNames == null) {
+            folderNames = List.copyOf(folders.keySet());
+        }
+        return folderNames;
+    }
+
+    /**
+     * Live, read-only view of a folder's sorted snippets.
+     */
+    List<Snippet> snippetsIn(String folder) {
+        List<Snippet> list = folder == null ? null : folders.get(folder);
+        return list == null ? List.of() : Collections.unmodifiableList(list);
+    }
+
+    private List<Snippet> folder(String name) {
+        List<Snippet> list = folders.get(name);
+        if (list == null) {
+            list = new ArrayList<>();
+            folders.put(name, list);
+            folderNames = null;
+        }
+        return list;
+    }
+
+    // After any snippets with an equal name, so ties keep insertion order.
+    private static int insertionPoint(List<Snippet> list, Snippet s) {
+        int lo = 0;
+        int hi = list.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (NAME_ORDER.compare(list.get(mid), s) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static boolean isFolderName(String folder) {
+        return folder != null && !folder.isBlank();
+    }
+}
@@ -1,60 +1,154 @@
 package com.clipy.linux.model;
 
+import com.clipy.linux.persistence.SnippetsData;
 import com.clipy.linux.persistence.SnippetsPersistence;
+import com.clipy.linux.persistence.SnippetsSaver;
+import com.clipy.linux.template.Template;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
+/**
+ * Mutators run on the FX thread and hold the model lock, so the saver
+ * thread can take a consistent copy; see {@link #copyForSave()}.
+ *
+ * Folder listings come from a {@link SnippetIndex} that follows every list
+ * change, so the tray can ask for them on each right-click.
+ *
+ * Each snippet's content is compiled into a {@link Template} the first
+ * time it is pasted and kept by id until the snippet changes.
+ */
 public class SnippetsModel {
 
+    // above this many snippets in one list change, re-index from scratch
+    private static final int REBUILD_THRESHOLD = 64;
+
     private final ObservableList<Snippet> snippets =
             FXCollections.observableArrayList();
+    private final SnippetIndex index = new SnippetIndex();
+    private final SnippetsSaver saver = new SnippetsSaver(this::copyForSave);
+    private final Map<String, Template> templates = new HashMap<>();
+    private volatile long version;
 
     public SnippetsModel() {
         List<Snippet> loaded = SnippetsPersistence.loadSnippets();
+        for (String folder : SnippetsPersistence.loadFolders()) {
+            index.addFolder(folder);
+        }
+        // Folders used to be materialized as empty placeholder snippets;
+        // keep the folder, drop the placeholder.
+        boolean migrated = loaded.removeIf(s -> {
+            boolean placeholder = isBlank(s.getName()) && isBlank(s.getContent());
+            if (placeholder) index.addFolder(s.getFolder());
+            return placeholder;
+        });
         snippets.setAll(loaded);
+        index.rebuild(snippets);
+        snippets.addListener(this::onListChanged);
+        if (migrated) save();
+    }
+
+    /**
+     * Bumped on every change to snippets or folders; compare to skip work
+     * when nothing changed.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Called on the saver thread after each write; see
+     * {@link #getSaveStatus()}.
+     */
+    public void setSaveListener(Runnable listener) {
+        saver.setListener(listener);
+    }
+
+    public boolean hasPendingSave() {
+        return saver.hasPendingWrites();
+    }
+
+    /**
+     * Short status line for the editor, e.g. "Saved (3 ms)".
+     */
+    public String getSaveStatus() {
+        if (saver.hasPendingWrites()) {
+            return saver.lastSaveFailed() ? "Save failed, will retry" : "Saving...";
+        }
+        long ms = saver.getLastSaveMillis();
+        return ms < 0 ? "" : "Saved (" + ms + " ms)";
+    }
+
+    /**
+     * Write any pending changes and stop the saver; call on shutdown.
+     */
+    public void close() {
+        saver.close();
     }
 
     public ObservableList<Snippet> getSnippets() {
         return snippets;
     }
 
-    public List<String> getFolders() {
-        return snippets.stream()
-                .map(Snippet::getFolder)
-                .filter(Objects::nonNull)
-                .filter(s -> !s.isBlank())
-                .distinct()
-                .sorted(String::compareToIgnoreCase)
-                .collect(Collectors.toList());
+    /**
+     * All snippets as an immutable copy, safe to read off the FX thread.
+     */
+    public synchronized List<Snippet> getSnippetsSnapshot() {
+        return List.copyOf(snippets);
     }
 
-    public List<Snippet> getSnippetsInFolder(String folder) {
-        return snippets.stream()
-                .filter(s -> Objects.equals(folder, s.getFolder()))
-                .sorted(Comparator.comparing(Snippet::getName,
-                        String.CASE_INSENSITIVE_ORDER))
-                .collect(Collectors.toList());
+    /**
+     * The snippet's content compiled, cached by snippet id.
+     */
+    public synchronized Template getTemplate(Snippet snippet) {
+        if (snippet.getId() == null) return Template.compile(snippet.getContent());
+        return templates.computeIfAbsent(snippet.getId(), id -> Template.compile(snippet.getContent()));
     }
 
-    public void addFolder(String folderName) {
-        if (folderName == null || folderName.isBlank()) return;
-        if (getFolders().contains(folderName)) return;
+    /**
+     * The snippet named {@code ref}: "Folder/Name", or just "Name" for the
+     * first with that name in any folder. Null if there is none.
+     */
+    public synchronized Snippet findSnippet(String ref) {
+        int slash = ref.indexOf('/');
+        if (slash > 0) {
+            String name = ref.substring(slash + 1);
+            for (Snippet s : index.snippetsIn(ref.substring(0, slash))) {
+                if (name.equals(s.getName())) return s;
+            }
+        }
+        for (Snippet s : snippets) {
+            if (ref.equals(s.getName())) return s;
+        }
+        return null;
+    }
 
-        // Materialize folder by adding a placeholder snippet
-        Snippet placeholder = new Snippet(
-                UUID.randomUUID().toString(),
-                folderName,
-                "",   // name
-                ""    // content
-        );
-        snippets.add(placeholder);
+    /**
+     * Folder names, sorted case-insensitively. Immutable, and the same
+     * list until the folders change.
+     */
+    public synchronized List<String> getFolders() {
+        return index.folderNames();
+    }
+
+    /**
+     * Snippets in {@code folder}, sorted by name; an immutable copy.
+     */
+    public synchronized List<Snippet> getSnippetsInFolder(String folder) {
+        return List.copyOf(index.snippetsIn(folder));
+    }
+
+    public synchronized void addFolder(String folderName) {
+        if (folderName == null || folderName.isBlank()) return;
+        if (!index.addFolder(folderName)) return;
+        version++;
         save();
     }
 
-    public Snippet addSnippet(String folder, String name, String content) {
+    public synchronized Snippet addSnippet(String folder, String name, String content) {
         if (folder == null || folder.isBlank()) return null;
         if (name == null || name.isBlank()) name = content;
 
@@ -69,32 +163,101 @@ public class SnippetsModel {
         return snippet;
     }
 
-    public void removeSnippet(Snippet snippet) {
+    public synchronized void removeSnippet(Snippet snippet) {
         if (snippet == null) return;
         snippets.remove(snippet);
         save();
     }
 
-    public void updateSnippet(Snippet target,
+    public synchronized void updateSnippet(Snippet target,
                               String name,
                               String content) {
         if (target == null) return;
+        if (Objects.equals(name, target.getName()) && Objects.equals(content, target.getContent())) {
+            return; // e.g. the editor echoing a selection change
+        }
+        boolean renamed = !Objects.equals(name, target.getName());
         target.setName(name);
         target.setContent(content);
+        templates.remove(target.getId());
+        if (renamed) {
+            index.update(target);
+        }
+        version++;
         save();
     }
 
-    public void renameFolder(String oldName, String newName) {
-        if (oldName == null || newName == null) return;
-        for (Snippet s : snippets) {
-            if (oldName.equals(s.getFolder())) {
-                s.setFolder(newName);
+    public synchronized void renameFolder(String oldName, String newName) {
+        if (oldName == null || newName == null || newName.isBlank() || oldName.equals(newName)) return;
+        for (Snippet s : index.snippetsIn(oldName)) {
+            s.setFolder(newName);
+        }
+        index.renameFolder(oldName, newName);
+        version++;
+        save();
+    }
+
+    /**
+     * Apply many changes at once: {@code body} edits a working copy through
+     * the transaction, and the result reaches the list as a single change
+     * with a single save. Nothing is applied if {@code body} throws.
+     */
+    public synchronized void batch(Consumer<SnippetsTransaction> body) {
+        SnippetsTransaction tx = new SnippetsTransaction(snippets, index.folderNames());
+        body.accept(tx);
+        if (!tx.isChanged()) return;
+        snippets.setAll(tx.commit());
+        for (SnippetsTransaction.FolderOp op : tx.folderOps()) {
+            if (op.from() == null) {
+                index.addFolder(op.to());
+            } else {
+                index.renameFolder(op.from(), op.to());
             }
         }
+        version++;
         save();
     }
 
+    // Runs inside the mutator that changed the list, under the lock.
+    private void onListChanged(ListChangeListener.Change<? extends Snippet> c) {
+        boolean rebuild = false;
+        while (c.next()) {
+            if (c.getRemovedSize() > REBUILD_THRESHOLD || c.getAddedSize() > REBUILD_THRESHOLD) {
+                rebuild = true;
+            }
+        }
+        if (rebuild) {
+            index.rebuild(snippets);
+            templates.clear();
+        } else {
+            c.reset();
+            while (c.next()) {
+                for (Snippet s : c.getRemoved()) {
+                    index.remove(s);
+                    templates.remove(s.getId());
+                }
+                for (Snippet s : c.getAddedSubList()) {
+                    index.add(s);
+                }
+            }
+        }
+        version++;
+    }
+
     private void save() {
-        SnippetsPersistence.saveSnippets(new ArrayList<>(snippets));
+        saver.requestSave();
+    }
+
+    // Runs on the saver thread; copies so serializing needs no lock.
+    private synchronized SnippetsData copyForSave() {
+        List<Snippet> copy = new ArrayList<>(snippets.size());
+        for (Snippet s : snippets) {
+            copy.add(new Snippet(s.getId(), s.getFolder(), s.getName(), s.getContent()));
+        }
+        return new SnippetsData(copy, index.folderNames());
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
     }
 }
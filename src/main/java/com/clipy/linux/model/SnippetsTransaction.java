@@ -0,0 +1,195 @@
+package com.clipy.linux.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A batch of snippet changes, see {@link SnippetsModel#batch}. Changes go
+ * to a private working copy; the model only sees them, as one list change
+ * and one save, once the batch has finished. If the batch throws, nothing
+ * is applied.
+ *
+ * Snippets already in the model are copied on first change and the copy's
+ * fields written back on commit, so callers keep working with the same
+ * Snippet objects.
+ */
+public final class SnippetsTransaction {
+
+    // Positions below initialSize hold the model's snippets (or their
+    // copies), later ones snippets added in this batch; null = removed.
+    private final List<Snippet> working;
+    private final int initialSize;
+    private final Map<Snippet, Snippet> originalOf = new IdentityHashMap<>();
+    private final Set<String> folders;
+    private final List<FolderOp> folderOps = new ArrayList<>();
+    private Map<Snippet, Integer> positions; // caller's object -> position
+    private Set<String> ids;
+    private boolean changed;
+
+    /**
+     * A folder added ({@code from} null) or renamed, replayed on the
+     * model's folder index at commit.
+     */
+    record FolderOp(String from, String to) {
+    }
+
+    SnippetsTransaction(List<Snippet> snippets, Collection<String> folders) {
+        this.working = new ArrayList<>(snippets);
+        this.initialSize = working.size();
+        this.folders = new HashSet<>(folders);
+    }
+
+    public void addFolder(String folderName) {
+        if (folderName == null || folderName.isBlank()) return;
+        if (!folders.add(folderName)) return;
+        folderOps.add(new FolderOp(null, folderName));
+        changed = true;
+    }
+
+    public Snippet addSnippet(String folder, String name, String content) {
+        if (folder == null || folder.isBlank()) return null;
+        if (name == null || name.isBlank()) name = content;
+        Snippet snippet = new Snippet(UUID.randomUUID().toString(), folder, name,
+                content == null ? "" : content);
+        append(snippet);
+        return snippet;
+    }
+
+    /**
+     * Add a snippet built elsewhere (an importer). It keeps its id unless
+     * that is missing or already taken.
+     */
+    public Snippet add(Snippet snippet) {
+        if (snippet.getFolder() == null || snippet.getFolder().isBlank()) return null;
+        if (snippet.getId() == null || ids().contains(snippet.getId())) {
+            snippet.setId(randomId());
+        }
+        if (snippet.getContent() == null) snippet.setContent("");
+        if (snippet.getName() == null || snippet.getName().isBlank()) {
+            snippet.setName(snippet.getContent());
+        }
+        append(snippet);
+        return snippet;
+    }
+
+    public void removeSnippet(Snippet snippet) {
+        if (snippet == null) return;
+        Integer pos = positions().remove(snippet);
+        if (pos == null) return;
+        working.set(pos, null);
+        ids = null;
+        changed = true;
+    }
+
+    public void updateSnippet(Snippet target, String name, String content) {
+        if (target == null) return;
+        Integer pos = positions().get(target);
+        if (pos == null) return;
+        Snippet s = working.get(pos);
+        if (Objects.equals(name, s.getName()) && Objects.equals(content, s.getContent())) return;
+        s = writableAt(pos);
+        s.setName(name);
+        s.setContent(content);
+        changed = true;
+    }
+
+    public void renameFolder(String oldName, String newName) {
+        if (oldName == null || newName == null || newName.isBlank() || oldName.equals(newName)) return;
+        for (int i = 0; i < working.size(); i++) {
+            Snippet s = working.get(i);
+            if (s != null && oldName.equals(s.getFolder())) {
+                writableAt(i).setFolder(newName);
+                changed = true;
+            }
+        }
+        if (folders.remove(oldName)) {
+            folders.add(newName);
+            folderOps.add(new FolderOp(oldName, newName));
+            changed = true;
+        }
+    }
+
+    boolean isChanged() {
+        return changed;
+    }
+
+    List<FolderOp> folderOps() {
+        return folderOps;
+    }
+
+    /**
+     * The final list, with changes to existing snippets written back into
+     * the original objects.
+     */
+    List<Snippet> commit() {
+        List<Snippet> result = new ArrayList<>(working.size());
+        for (Snippet s : working) {
+            if (s == null) continue;
+            Snippet original = originalOf.get(s);
+            if (original != null) {
+                original.setFolder(s.getFolder());
+                original.setName(s.getName());
+                original.setContent(s.getContent());
+                s = original;
+            }
+            result.add(s);
+        }
+        return result;
+    }
+
+    // Same shape as UUID.randomUUID(), without SecureRandom's cost per id;
+    // ids only need to be unique, not unguessable.
+    private static String randomId() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        long msb = (r.nextLong() & ~0xF000L) | 0x4000L;
+        long lsb = (r.nextLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+        return new UUID(msb, lsb).toString();
+    }
+
+    private void append(Snippet snippet) {
+        if (positions != null) positions.put(snippet, working.size());
+        working.add(snippet);
+        folders.add(snippet.getFolder());
+        if (ids != null) ids.add(snippet.getId());
+        changed = true;
+    }
+
+    // The snippet at pos, copied first if it is one of the model's own.
+    private Snippet writableAt(int pos) {
+        Snippet s = working.get(pos);
+        if (pos >= initialSize || originalOf.containsKey(s)) return s;
+        Snippet copy = new Snippet(s.getId(), s.getFolder(), s.getName(), s.getContent());
+        working.set(pos, copy);
+        originalOf.put(copy, s);
+        return copy;
+    }
+
+    private Map<Snippet, Integer> positions() {
+        if (positions == null) {
+            positions = new IdentityHashMap<>(working.size() * 2);
+            for (int i = 0; i < working.size(); i++) {
+                Snippet s = working.get(i);
+                if (s != null) positions.put(originalOf.getOrDefault(s, s), i);
+            }
+        }
+        return positions;
+    }
+
+    private Set<String> ids() {
+        if (ids == null) {
+            ids = new HashSet<>();
+            for (Snippet s : working) {
+                if (s != null) ids.add(s.getId());
+            }
+        }
+        return ids;
+    }
+}
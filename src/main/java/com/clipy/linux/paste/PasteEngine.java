@@ -0,0 +1,327 @@
+package com.clipy.linux.paste;
+
+import com.clipy.linux.ClipboardService;
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.history.HistoryEvent;
+import com.clipy.linux.history.HistorySnapshot;
+
+import java.awt.AWTException;
+import java.awt.GraphicsEnvironment;
+import java.awt.Robot;
+import java.awt.event.KeyEvent;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Puts text on the clipboard and types Ctrl+V into whatever window has
+ * focus.
+ *
+ * All pastes run in order on one "paste" thread that owns a single Robot
+ * for the life of the app. Instead of sleeping a fixed time after setting
+ * the clipboard, the thread reads it back until it holds the new text (or
+ * the timeout passes), then sends the keys with the configured delay.
+ *
+ * In queue mode ({@link #queue(List)}) no keys are sent: the first item
+ * goes on the clipboard, and each Ctrl+V the user types (reported through
+ * {@link #onPasteKey()}) swaps in the next, already loaded, item. Queue
+ * mode ends when the items run out, on {@link #cancelQueue()}, on a normal
+ * paste, or when something other than a queued item is copied.
+ */
+public class PasteEngine {
+
+    // log pastes slower than this
+    private static final long SLOW_PASTE_MILLIS = 100;
+    // Ctrl+V seen this soon after our own keys is our own
+    private static final long OWN_KEYS_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ClipboardService clipboardService;
+    private final ScheduledExecutorService thread;
+    private volatile PasteTiming timing;
+    private volatile Consumer<String> statusListener = System.out::println;
+
+    // only touched on the paste thread
+    private Robot robot;
+    private boolean robotFailed;
+    private final PasteQueue queue = new PasteQueue();
+    // content hashes of the queued items; a copy of anything else ends
+    // queue mode
+    private final Set<Long> queueHashes = new HashSet<>();
+
+    private volatile long keysSentNanos;
+    private volatile int queueRemaining;
+
+    private volatile long lastLatencyMillis = -1;
+    private volatile long maxLatencyMillis = -1;
+    private volatile long pasteCount;
+
+    public PasteEngine(ClipboardService clipboardService) {
+        this(clipboardService, PasteTiming.DEFAULT);
+    }
+
+    public PasteEngine(ClipboardService clipboardService, PasteTiming timing) {
+        this.clipboardService = clipboardService;
+        this.timing = timing;
+        this.thread = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "paste");
+            t.setDaemon(true);
+            return t;
+        });
+        clipboardService.addHistoryListener(this::historyChanged, thread);
+    }
+
+    /**
+     * Where to show queue mode starting and ending, e.g. a tray
+     * notification. Called on the paste thread.
+     */
+    public void setStatusListener(Consumer<String> listener) {
+        this.statusListener = listener;
+    }
+
+    public void setTiming(PasteTiming timing) {
+        this.timing = timing;
+    }
+
+    public PasteTiming getTiming() {
+        return timing;
+    }
+
+    /**
+     * Copy {@code text} and paste it into the focused window. Returns at
+     * once; the paste happens on the paste thread. Ends queue mode.
+     */
+    public void paste(String text) {
+        paste(text, 0);
+    }
+
+    /**
+     * Like {@link #paste(String)}, then move the caret {@code caretBack}
+     * characters left, e.g. to where a snippet template put {cursor}.
+     */
+    public void paste(String text, int caretBack) {
+        if (text == null) return;
+        long requested = System.nanoTime();
+        thread.execute(() -> {
+            endQueue();
+            doPaste(text, requested, caretBack);
+        });
+    }
+
+    /**
+     * Erase the {@code backspaces} characters just typed and paste
+     * {@code text} in their place, e.g. to expand an abbreviation; then
+     * move the caret as {@link #paste(String, int)} does. Ends queue mode.
+     */
+    public void replaceTyped(int backspaces, String text, int caretBack) {
+        if (text == null) return;
+        long requested = System.nanoTime();
+        thread.execute(() -> {
+            endQueue();
+            Robot r = robot();
+            if (r == null) return;
+            r.setAutoDelay(timing.keyDelayMillis());
+            for (int i = 0; i < backspaces; i++) {
+                keysSentNanos = System.nanoTime();
+                r.keyPress(KeyEvent.VK_BACK_SPACE);
+                r.keyRelease(KeyEvent.VK_BACK_SPACE);
+            }
+            doPaste(text, requested, caretBack);
+        });
+    }
+
+    /**
+     * Whether key events seen now are likely our own synthetic ones.
+     */
+    public boolean isSendingKeys() {
+        return System.nanoTime() - keysSentNanos < OWN_KEYS_NANOS;
+    }
+
+    /**
+     * Start queue mode: put the first of {@code items} on the clipboard and
+     * move on to the next one after every Ctrl+V.
+     */
+    public void queue(List<HistoryEntry> items) {
+        List<HistoryEntry> copy = List.copyOf(items);
+        thread.execute(() -> {
+            String first = queue.start(copy);
+            queueRemaining = queue.remaining();
+            if (first == null) {
+                endQueue();
+                return;
+            }
+            queueHashes.clear();
+            for (HistoryEntry e : copy) {
+                queueHashes.add(e.getHash());
+            }
+            copyNow(first);
+            statusListener.accept("Paste queue: " + queue.total() + " items, Ctrl+V pastes the next one");
+        });
+    }
+
+    public void cancelQueue() {
+        thread.execute(() -> {
+            if (!queue.isActive()) return;
+            endQueue();
+            statusListener.accept("Paste queue stopped");
+        });
+    }
+
+    /**
+     * Items left after the one on the clipboard, 0 outside queue mode.
+     */
+    public int getQueueRemaining() {
+        return queueRemaining;
+    }
+
+    /**
+     * The user pressed Ctrl+V somewhere. In queue mode the next item goes
+     * on the clipboard once the paste has had time to read the current
+     * one. Safe to call from any thread.
+     */
+    public void onPasteKey() {
+        if (isSendingKeys()) return;
+        thread.schedule(this::advanceQueue, timing.queueSettleMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Milliseconds from the last paste request to its keys being sent, or
+     * -1 before the first paste.
+     */
+    public long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    public long getPasteCount() {
+        return pasteCount;
+    }
+
+    /**
+     * Finish queued pastes (briefly) and stop the paste thread.
+     */
+    public void close() {
+        thread.shutdown();
+        try {
+            thread.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void advanceQueue() {
+        if (!queue.isActive()) return;
+        String text = queue.advance();
+        queueRemaining = queue.remaining();
+        if (text == null) {
+            endQueue();
+            statusListener.accept("Paste queue done");
+            return;
+        }
+        copyNow(text);
+    }
+
+    private void endQueue() {
+        if (queue.isActive()) {
+            queue.clear();
+            queueRemaining = 0;
+        }
+        queueHashes.clear();
+    }
+
+    // On the paste thread. Our own swaps show up here too, as copies of
+    // queued items; a copy of anything else is the user's.
+    private void historyChanged(List<HistoryEvent> events, HistorySnapshot snapshot) {
+        if (!queue.isActive()) return;
+        for (HistoryEvent e : events) {
+            boolean copied = e.type() == HistoryEvent.Type.INSERTED || e.type() == HistoryEvent.Type.PROMOTED;
+            if (copied && !queueHashes.contains(e.item().getHash())) {
+                endQueue();
+                statusListener.accept("Paste queue stopped: something else was copied");
+                return;
+            }
+        }
+    }
+
+    private void doPaste(String text, long requested, int caretBack) {
+        PasteTiming t = timing;
+        try {
+            copyNow(text);
+            Robot r = robot();
+            if (r == null) return;
+            r.setAutoDelay(t.keyDelayMillis());
+            keysSentNanos = System.nanoTime();
+            r.keyPress(KeyEvent.VK_CONTROL);
+            r.keyPress(KeyEvent.VK_V);
+            r.keyRelease(KeyEvent.VK_V);
+            r.keyRelease(KeyEvent.VK_CONTROL);
+            keysSentNanos = System.nanoTime();
+            for (int i = 0; i < caretBack; i++) {
+                r.keyPress(KeyEvent.VK_LEFT);
+                r.keyRelease(KeyEvent.VK_LEFT);
+                keysSentNanos = System.nanoTime();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+        record((System.nanoTime() - requested) / 1_000_000);
+    }
+
+    // Set the clipboard and wait until it reads back as text.
+    private void copyNow(String text) {
+        int timeout = timing.clipboardTimeoutMillis();
+        clipboardService.setClipboardText(text);
+        try {
+            if (!awaitClipboard(text, timeout)) {
+                System.err.println("Clipboard did not take the new text within "
+                        + timeout + " ms, going on anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Poll with a short, growing interval until the clipboard reads back
+    // as text. Usually true on the first read, since we own the clipboard.
+    private boolean awaitClipboard(String text, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long sleep = 1;
+        while (true) {
+            if (text.equals(clipboardService.getClipboardText())) return true;
+            long left = deadline - System.nanoTime();
+            if (left <= 0) return false;
+            Thread.sleep(Math.min(sleep, Math.max(1, TimeUnit.NANOSECONDS.toMillis(left))));
+            sleep = Math.min(sleep * 2, 16);
+        }
+    }
+
+    private Robot robot() {
+        if (robot == null && !robotFailed) {
+            try {
+                if (GraphicsEnvironment.isHeadless()) throw new AWTException("headless");
+                robot = new Robot();
+            } catch (AWTException | SecurityException e) {
+                robotFailed = true;
+                System.err.println("Cannot send key events (" + e.getMessage()
+                        + "), pasting only sets the clipboard");
+            }
+        }
+        return robot;
+    }
+
+    private void record(long millis) {
+        lastLatencyMillis = millis;
+        if (millis > maxLatencyMillis) maxLatencyMillis = millis;
+        pasteCount++;
+        if (millis > SLOW_PASTE_MILLIS) {
+            System.out.println("Slow paste: " + millis + " ms");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.clipy.linux.paste;
+
+import com.clipy.linux.history.HistoryEntry;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Items waiting to be pasted one per Ctrl+V, see
+ * {@link PasteEngine#queue(List)}.
+ *
+ * The head item sits on the clipboard and the text of the one after it is
+ * already loaded, so moving on after a paste is a single clipboard set
+ * even for clips kept in the blob store. Only used on the paste thread.
+ */
+final class PasteQueue {
+
+    private final ArrayDeque<HistoryEntry> pending = new ArrayDeque<>();
+    private String next; // text of pending's head, read ahead
+    private int total;
+
+    /**
+     * Replace the queue with {@code items}.
+     *
+     * @return text to put on the clipboard now, or null if there is none
+     */
+    String start(List<HistoryEntry> items) {
+        pending.clear();
+        pending.addAll(items);
+        total = pending.size();
+        next = null;
+        String first = take();
+        prefetch();
+        return first;
+    }
+
+    /**
+     * The item after the one just pasted, or null when the queue is done.
+     */
+    String advance() {
+        String text = next;
+        next = null;
+        if (text == null) {
+            text = take();
+        }
+        prefetch();
+        return text;
+    }
+
+    void clear() {
+        pending.clear();
+        next = null;
+        total = 0;
+    }
+
+    boolean isActive() {
+        return total > 0;
+    }
+
+    /**
+     * Items not yet on the clipboard.
+     */
+    int remaining() {
+        return pending.size() + (next == null ? 0 : 1);
+    }
+
+    int total() {
+        return total;
+    }
+
+    // Next readable text; entries whose blob has gone are skipped.
+    private String take() {
+        while (!pending.isEmpty()) {
+            String text = pending.poll().getText();
+            if (text != null) return text;
+        }
+        return null;
+    }
+
+    private void prefetch() {
+        if (next == null) {
+            next = take();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.clipy.linux.paste;
+
+/**
+ * Timing for {@link PasteEngine}.
+ *
+ * @param keyDelayMillis         pause between the synthetic key events
+ * @param clipboardTimeoutMillis how long to wait for the clipboard to hold
+ *                               the new text before pasting anyway
+ * @param queueSettleMillis      in queue mode, how long after a Ctrl+V the
+ *                               pasted item stays on the clipboard, so the
+ *                               target application can fetch it
+ */
+public record PasteTiming(int keyDelayMillis, int clipboardTimeoutMillis, int queueSettleMillis) {
+
+    public static final PasteTiming DEFAULT = new PasteTiming(5, 250, 150);
+
+    public PasteTiming {
+        keyDelayMillis = Math.max(0, Math.min(keyDelayMillis, 500));
+        clipboardTimeoutMillis = Math.max(0, clipboardTimeoutMillis);
+        queueSettleMillis = Math.max(0, queueSettleMillis);
+    }
+
+    public PasteTiming withKeyDelay(int millis) {
+        return new PasteTiming(millis, clipboardTimeoutMillis, queueSettleMillis);
+    }
+}
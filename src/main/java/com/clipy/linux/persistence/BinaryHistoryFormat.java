@@ -0,0 +1,279 @@
+package com.clipy.linux.persistence;
+
+import com.clipy.linux.history.ContentStore;
+import com.clipy.linux.history.HistoryEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * history.bin, the compact checkpoint format.
+ *
+ * <pre>
+ * header: int magic "CLPH", int format, long generation
+ * block:  int recordCount, int rawLength, int storedLength, byte codec,
+ *         stored bytes (raw, or Deflate-compressed when that is smaller)
+ * record: int length, int crc32, entry bytes        (inside a block)
+ * </pre>
+ *
+ * Each record holds one {@link HistoryEntryCodec} entry.
+ *
+ * Items are written newest first so the start of the file is enough for
+ * the tray and the first history page. A record whose checksum fails is
+ * skipped; a block that cannot be decoded ends the file.
+ */
+public final class BinaryHistoryFormat {
+
+    static final int MAGIC = 0x434c5048; // "CLPH"
+    static final int FORMAT = 2;
+
+    private static final byte CODEC_RAW = 0;
+    private static final byte CODEC_DEFLATE = 1;
+
+    private static final int BLOCK_RECORDS = 256;
+    private static final int BLOCK_BYTES = 256 * 1024;
+    private static final int MIN_COMPRESS_BYTES = 1024;
+    // no block written here comes close; a bigger length is corruption
+    private static final int MAX_BLOCK_BYTES = 64 * 1024 * 1024;
+
+    private BinaryHistoryFormat() {
+    }
+
+    public static void write(Path file, Iterable<HistoryEntry> items, long generation) throws IOException {
+        try (OutputStream os = Files.newOutputStream(file)) {
+            write(os, items, generation);
+        }
+    }
+
+    public static void write(OutputStream os, Iterable<HistoryEntry> items, long generation) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeLong(generation);
+
+        BlockWriter block = new BlockWriter(out);
+        for (HistoryEntry e : items) {
+            if (e != null) {
+                block.add(HistoryEntryCodec.encode(e));
+            }
+        }
+        block.finish();
+        out.flush();
+    }
+
+    /**
+     * @throws IOException if {@code file} is not a history.bin file
+     */
+    public static HistoryReader open(Path file, ContentStore store) throws IOException {
+        long size = Files.size(file);
+        InputStream in = Files.newInputStream(file);
+        try {
+            return new Reader(in, size, store);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static final class BlockWriter {
+        private final DataOutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private ByteBuffer raw = ByteBuffer.allocate(BLOCK_BYTES + 8);
+        private byte[] compressed = new byte[0];
+        private int records;
+
+        BlockWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void add(byte[] record) throws IOException {
+            if (raw.position() > 0 && raw.position() + 8 + record.length > BLOCK_BYTES) {
+                flushBlock();
+            }
+            if (raw.capacity() < 8 + record.length) {
+                raw = ByteBuffer.allocate(8 + record.length);
+            }
+            crc.reset();
+            crc.update(record);
+            raw.putInt(record.length).putInt((int) crc.getValue()).put(record);
+            if (++records == BLOCK_RECORDS) {
+                flushBlock();
+            }
+        }
+
+        void finish() throws IOException {
+            flushBlock();
+            deflater.end();
+        }
+
+        private void flushBlock() throws IOException {
+            if (records == 0) return;
+            int rawLength = raw.position();
+            byte[] stored = raw.array();
+            int storedLength = rawLength;
+            byte codec = CODEC_RAW;
+
+            if (rawLength >= MIN_COMPRESS_BYTES) {
+                if (compressed.length < rawLength) {
+                    compressed = new byte[rawLength];
+                }
+                deflater.reset();
+                deflater.setInput(stored, 0, rawLength);
+                deflater.finish();
+                int n = deflater.deflate(compressed, 0, rawLength);
+                if (deflater.finished() && n < rawLength) {
+                    stored = compressed;
+                    storedLength = n;
+                    codec = CODEC_DEFLATE;
+                }
+            }
+
+            out.writeInt(records);
+            out.writeInt(rawLength);
+            out.writeInt(storedLength);
+            out.writeByte(codec);
+            out.write(stored, 0, storedLength);
+            raw.clear();
+            records = 0;
+        }
+    }
+
+    private static final class Reader implements HistoryReader {
+        private final DataInputStream in;
+        private final CRC32 crc = new CRC32();
+        private final Inflater inflater = new Inflater();
+        private final long generation;
+        private final ContentStore store;
+
+        private ByteBuffer block = ByteBuffer.allocate(0);
+        private byte[] stored = new byte[0];
+        private int remainingInBlock;
+        private long remainingInFile;
+        private boolean done;
+
+        Reader(InputStream is, long size, ContentStore store) throws IOException {
+            this.store = store;
+            in = new DataInputStream(new BufferedInputStream(is, 64 * 1024));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a history.bin file");
+            }
+            int format = in.readInt();
+            if (format != FORMAT) {
+                throw new IOException("unsupported history.bin format " + format);
+            }
+            generation = in.readLong();
+            remainingInFile = size - 16;
+        }
+
+        @Override
+        public long generation() {
+            return generation;
+        }
+
+        @Override
+        public int read(int max, Consumer<HistoryEntry> sink) throws IOException {
+            int n = 0;
+            while (n < max) {
+                if (remainingInBlock == 0 && !nextBlock()) break;
+                remainingInBlock--;
+                if (block.remaining() < 8) {
+                    remainingInBlock = 0; // malformed block, skip what is left
+                    continue;
+                }
+                int length = block.getInt();
+                int checksum = block.getInt();
+                if (length < 0 || length > block.remaining()) {
+                    remainingInBlock = 0;
+                    continue;
+                }
+                int start = block.position();
+                block.position(start + length);
+                crc.reset();
+                crc.update(block.array(), start, length);
+                if ((int) crc.getValue() != checksum) {
+                    System.err.println("history.bin: skipping corrupt record");
+                    continue;
+                }
+                HistoryEntry entry = HistoryEntryCodec.decode(block.array(), start, length, store);
+                if (entry == null) {
+                    System.err.println("history.bin: skipping unknown record");
+                    continue;
+                }
+                sink.accept(entry);
+                n++;
+            }
+            return n;
+        }
+
+        private boolean nextBlock() throws IOException {
+            if (done) return false;
+            try {
+                int records = in.readInt();
+                int rawLength = in.readInt();
+                int storedLength = in.readInt();
+                byte codec = in.readByte();
+                remainingInFile -= 13;
+                if (records <= 0 || rawLength < 0 || storedLength < 0
+                        || rawLength > MAX_BLOCK_BYTES || storedLength > MAX_BLOCK_BYTES) {
+                    throw new IOException("bad block header");
+                }
+                if (storedLength > remainingInFile) {
+                    throw new IOException("block runs past the end of the file");
+                }
+                remainingInFile -= storedLength;
+                if (stored.length < storedLength) {
+                    stored = new byte[storedLength];
+                }
+                in.readFully(stored, 0, storedLength);
+
+                if (block.capacity() < rawLength) {
+                    block = ByteBuffer.allocate(rawLength);
+                }
+                block.clear();
+                if (codec == CODEC_RAW && storedLength == rawLength) {
+                    System.arraycopy(stored, 0, block.array(), 0, rawLength);
+                } else if (codec == CODEC_DEFLATE) {
+                    inflater.reset();
+                    inflater.setInput(stored, 0, storedLength);
+                    int n = inflater.inflate(block.array(), 0, rawLength);
+                    if (n != rawLength) {
+                        throw new IOException("short block");
+                    }
+                } else {
+                    throw new IOException("unknown block codec " + codec);
+                }
+                block.limit(rawLength);
+                remainingInBlock = records;
+                return true;
+            } catch (EOFException e) {
+                done = true;
+                return false;
+            } catch (IOException | DataFormatException e) {
+                System.err.println("history.bin: stopping at unreadable block: " + e.getMessage());
+                done = true;
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+    }
+}
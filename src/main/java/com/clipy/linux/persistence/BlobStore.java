@@ -0,0 +1,105 @@
+package com.clipy.linux.persistence;
+
+import com.clipy.linux.history.ContentStore;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content-addressed store for large clips under ~/.config/clipy-linux/blobs.
+ *
+ * A blob is the clip's UTF-8 bytes in a file named after their SHA-256
+ * ({@code blobs/ab/abcdef...}), so copying the same text twice stores it
+ * once. Blobs are read through a memory-mapped channel, and only when an
+ * entry's full text is actually needed.
+ */
+public class BlobStore implements ContentStore {
+
+    // Blobs this recent are never collected: an entry may have been
+    // captured after the snapshot that is being checked against.
+    private static final long GC_GRACE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path dir;
+
+    public BlobStore(Path configDir) {
+        this.dir = configDir.resolve("blobs");
+    }
+
+    @Override
+    public String put(String text) throws IOException {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        String id = sha256(utf8);
+        Path file = pathFor(id);
+        if (Files.exists(file)) {
+            // reused: keep it out of the next collection
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return id;
+        }
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(id + ".tmp");
+        Files.write(tmp, utf8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    @Override
+    public String load(String id) throws IOException {
+        try (FileChannel ch = FileChannel.open(pathFor(id), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return StandardCharsets.UTF_8.decode(buf).toString();
+        }
+    }
+
+    /**
+     * Delete blobs not in {@code liveIds} (and older than the grace period).
+     *
+     * @return number of blobs deleted
+     */
+    public int retainOnly(Set<String> liveIds) {
+        if (!Files.isDirectory(dir)) return 0;
+        long cutoff = System.currentTimeMillis() - GC_GRACE_MILLIS;
+        int deleted = 0;
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(dir)) {
+            for (Path shard : shards) {
+                if (!Files.isDirectory(shard)) continue;
+                try (DirectoryStream<Path> blobs = Files.newDirectoryStream(shard)) {
+                    for (Path blob : blobs) {
+                        String name = blob.getFileName().toString();
+                        if (liveIds.contains(name)) continue;
+                        if (Files.getLastModifiedTime(blob).toMillis() > cutoff) continue;
+                        Files.deleteIfExists(blob);
+                        deleted++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return deleted;
+    }
+
+    private Path pathFor(String id) {
+        return dir.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE has SHA-256
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.clipy.linux.persistence;
+
+import com.clipy.linux.history.ContentStore;
+import com.clipy.linux.history.HistoryEntry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte layout of a history entry, shared by history.bin and the journal.
+ *
+ * <pre>
+ * inline: byte 3, long timestamp, long created, UTF-8 text
+ * blob:   byte 4, long timestamp, long created, long hash, int length,
+ *         int previewBytes, UTF-8 preview, ASCII blob id
+ * </pre>
+ */
+final class HistoryEntryCodec {
+
+    private static final byte INLINE = 3;
+    private static final byte BLOB = 4;
+
+    private HistoryEntryCodec() {
+    }
+
+    static byte[] encode(HistoryEntry e) {
+        if (e.isInline()) {
+            byte[] text = e.getText().getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(1 + 8 + 8 + text.length)
+                    .put(INLINE).putLong(e.getTimestamp()).putLong(e.getCreated()).put(text)
+                    .array();
+        }
+        byte[] preview = e.getPreview().getBytes(StandardCharsets.UTF_8);
+        byte[] id = e.getBlobId().getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocate(1 + 8 + 8 + 8 + 4 + 4 + preview.length + id.length)
+                .put(BLOB).putLong(e.getTimestamp()).putLong(e.getCreated())
+                .putLong(e.getHash()).putInt(e.getLength())
+                .putInt(preview.length).put(preview).put(id)
+                .array();
+    }
+
+    /**
+     * @return the entry, or null if the bytes are not a known layout
+     */
+    static HistoryEntry decode(byte[] buf, int off, int len, ContentStore store) {
+        if (len < 17) return null;
+        ByteBuffer b = ByteBuffer.wrap(buf, off, len);
+        byte kind = b.get();
+        long timestamp = b.getLong();
+        long created = b.getLong();
+        if (kind == INLINE) {
+            String text = new String(buf, b.position(), off + len - b.position(), StandardCharsets.UTF_8);
+            return text.isEmpty() ? null : HistoryEntry.of(text, timestamp).withCreated(created);
+        }
+        if (kind == BLOB && b.remaining() >= 16) {
+            long hash = b.getLong();
+            int length = b.getInt();
+            int previewBytes = b.getInt();
+            if (previewBytes < 0 || previewBytes > b.remaining()) return null;
+            String preview = new String(buf, b.position(), previewBytes, StandardCharsets.UTF_8);
+            int idStart = b.position() + previewBytes;
+            String id = new String(buf, idStart, off + len - idStart, StandardCharsets.US_ASCII);
+            return HistoryEntry.stored(hash, length, timestamp, created, preview, id, store);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,264 @@
+package com.clipy.linux.persistence;
+
+import com.clipy.linux.history.ContentStore;
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.history.HistoryList;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of history changes since the last checkpoint.
+ *
+ * File layout: a 16 byte header (magic, format, generation) followed by
+ * records of {@code [int length][int crc32][body]}. The body starts with an
+ * op byte; ENTRY carries a whole {@link HistoryEntryCodec} entry and is
+ * written for inserts and promotes alike, so replay works even when only
+ * the newest part of the checkpoint has been loaded. EVICT carries only the
+ * content hash and length; CLEAR has no body.
+ *
+ * A record cut short by a crash fails its length or checksum test on
+ * replay; it and anything after it are dropped and the file is truncated
+ * back to the last good record.
+ */
+public class HistoryJournal implements Closeable {
+
+    private static final int MAGIC = 0x434c504a; // "CLPJ"
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte EVICT = 3;
+    private static final byte CLEAR = 4;
+    private static final byte ENTRY = 5;
+
+    private final Path file;
+    private final ContentStore store;
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+    public HistoryJournal(Path file, ContentStore store) {
+        this.file = file;
+        this.store = store;
+    }
+
+    /**
+     * Replay target: the part of the checkpoint loaded so far, plus what the
+     * journal says about items that have not been loaded yet.
+     */
+    public static final class Replay {
+        final HistoryList history;
+        final Set<Long> evictedLater = new HashSet<>();
+        boolean cleared;
+        int replayed;
+
+        public Replay(HistoryList history) {
+            this.history = history;
+        }
+
+        /**
+         * Content hashes of evicted items; skip them when the rest of the
+         * checkpoint is read.
+         */
+        public Set<Long> evictedLater() {
+            return evictedLater;
+        }
+
+        /**
+         * True if history was cleared; the rest of the checkpoint is void.
+         */
+        public boolean cleared() {
+            return cleared;
+        }
+    }
+
+    /**
+     * Apply the journal to {@code target} if it continues checkpoint
+     * {@code generation}, and leave the file open for appending. A journal
+     * from another generation is stale (the checkpoint already has it) and
+     * is started over.
+     *
+     * @return number of records replayed
+     */
+    public int openAndReplay(long generation, Replay target) throws IOException {
+        long goodEnd = replay(generation, target);
+        if (goodEnd < 0) {
+            reset(generation);
+            return 0;
+        }
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        if (channel.size() > goodEnd) {
+            System.err.println("History journal: dropping torn tail at byte " + goodEnd);
+            channel.truncate(goodEnd);
+            channel.force(false);
+        }
+        channel.position(goodEnd);
+        return target.replayed;
+    }
+
+    /**
+     * Apply the journal to {@code target} without opening it for writing,
+     * safe to use while the app is running.
+     *
+     * @return offset just past the last good record, or -1 if the journal
+     * is missing or belongs to another generation
+     */
+    public long replay(long generation, Replay target) throws IOException {
+        long fileSize = Files.exists(file) ? Files.size(file) : 0;
+        if (fileSize < HEADER_SIZE) return -1;
+        try (InputStream in = Files.newInputStream(file)) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+            if (data.readInt() != MAGIC || data.readInt() != FORMAT
+                    || data.readLong() != generation) {
+                return -1;
+            }
+            long goodEnd = HEADER_SIZE;
+            byte[] body;
+            while ((body = readRecord(data, fileSize - goodEnd)) != null) {
+                apply(body, target);
+                goodEnd += 8 + body.length;
+                target.replayed++;
+            }
+            return goodEnd;
+        }
+    }
+
+    /**
+     * Start an empty journal for {@code generation}, discarding the
+     * current one.
+     */
+    public void reset(long generation) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT).putLong(generation).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+        buffer.clear();
+    }
+
+    public void appendEntry(HistoryEntry entry) {
+        byte[] encoded = HistoryEntryCodec.encode(entry);
+        byte[] body = new byte[1 + encoded.length];
+        body[0] = ENTRY;
+        System.arraycopy(encoded, 0, body, 1, encoded.length);
+        appendRecord(body);
+    }
+
+    public void appendEvict(HistoryEntry entry) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 4);
+        body.put(EVICT).putLong(entry.getHash()).putInt(entry.getLength());
+        appendRecord(body.array());
+    }
+
+    public void appendClear() {
+        appendRecord(new byte[]{CLEAR});
+    }
+
+    /**
+     * Write buffered records and force them to disk.
+     */
+    public void flush() throws IOException {
+        if (channel == null || buffer.position() == 0) return;
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        channel.force(false);
+    }
+
+    public long size() throws IOException {
+        return (channel == null ? 0 : channel.size()) + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel == null) return;
+        try {
+            flush();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void appendRecord(byte[] body) {
+        crc.reset();
+        crc.update(body);
+        int needed = 8 + body.length;
+        if (buffer.remaining() < needed) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2,
+                    buffer.position() + needed));
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+        buffer.putInt(body.length).putInt((int) crc.getValue()).put(body);
+    }
+
+    /**
+     * @return the next record body, or null at end of file or at the first
+     * torn / corrupt record
+     */
+    private byte[] readRecord(DataInputStream data, long remaining) throws IOException {
+        if (remaining < 8) return null;
+        try {
+            int length = data.readInt();
+            int checksum = data.readInt();
+            if (length <= 0 || length > remaining - 8) return null;
+            byte[] body = new byte[length];
+            data.readFully(body);
+            crc.reset();
+            crc.update(body);
+            return (int) crc.getValue() == checksum ? body : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void apply(byte[] body, Replay target) {
+        HistoryList history = target.history;
+        ByteBuffer b = ByteBuffer.wrap(body);
+        switch (b.get()) {
+            case ENTRY -> {
+                HistoryEntry entry = HistoryEntryCodec.decode(body, 1, body.length - 1, store);
+                if (entry != null) history.addFirst(entry);
+            }
+            case EVICT -> {
+                long hash = b.getLong();
+                HistoryEntry entry = history.findByHash(hash, b.getInt());
+                if (entry != null) {
+                    history.remove(entry);
+                }
+                // the checkpoint copy further down is stale either way
+                target.evictedLater.add(hash);
+            }
+            case CLEAR -> {
+                history.clear();
+                target.evictedLater.clear();
+                target.cleared = true;
+            }
+            default -> {
+                // unknown op from a newer version, skip it
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.clipy.linux.persistence;
 
+import com.clipy.linux.history.HistoryEntry;
 import com.clipy.linux.model.HistoryModel;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -9,50 +10,134 @@ import java.io.Reader;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * History checkpoints. The live format is the compact history.bin (see
+ * {@link BinaryHistoryFormat}); an existing history.json is migrated on
+ * first use and kept as history.json.bak. JSON remains available as a
+ * readable export for debugging. Clips too large to keep inline live in the
+ * {@link BlobStore} next to it.
+ */
 public class HistoryPersistence {
 
+    private final Path configDir;
     private final Path historyFile;
+    private final Path legacyJsonFile;
+    private final BlobStore blobStore;
     private final Gson gson;
 
     public HistoryPersistence() {
         String home = System.getProperty("user.home");
-        Path configDir = Path.of(home, ".config", "clipy-linux");
+        configDir = Path.of(home, ".config", "clipy-linux");
         try {
             Files.createDirectories(configDir);
         } catch (IOException e) {
             e.printStackTrace();
         }
-        this.historyFile = configDir.resolve("history.json");
+        this.historyFile = configDir.resolve("history.bin");
+        this.legacyJsonFile = configDir.resolve("history.json");
+        this.blobStore = new BlobStore(configDir);
         this.gson = new GsonBuilder()
                 .setPrettyPrinting()   // nicer JSON[web:209][web:212]
                 .create();
     }
 
-    public void saveHistory(List<String> items) {
-        try (Writer w = Files.newBufferedWriter(historyFile)) {
-            HistoryModel model = new HistoryModel(items);
-            gson.toJson(model, w);   // robust JSON, handles escaping etc.[web:209][web:212]
+    public Path getConfigDir() {
+        return configDir;
+    }
+
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * Write the full history atomically: a crash leaves either the old or
+     * the new file, never a half-written one.
+     *
+     * @return false if the file could not be written
+     */
+    public boolean saveCheckpoint(List<HistoryEntry> items, long generation) {
+        Path tmp = historyFile.resolveSibling(historyFile.getFileName() + ".tmp");
+        try {
+            BinaryHistoryFormat.write(tmp, items, generation);
+            Files.move(tmp, historyFile,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
         }
     }
 
-    public List<String> loadHistory() {
+    /**
+     * Open the checkpoint for streaming, migrating history.json first if
+     * that is all there is. Never null; a missing or unreadable file reads
+     * as empty.
+     */
+    public HistoryReader openCheckpoint() {
+        if (!Files.exists(historyFile) && Files.exists(legacyJsonFile)) {
+            migrateJson();
+        }
         if (!Files.exists(historyFile)) {
-            return new ArrayList<>();
+            return HistoryReader.EMPTY;
         }
-        try (Reader r = Files.newBufferedReader(historyFile)) {
-            HistoryModel model = gson.fromJson(r, HistoryModel.class);
-            if (model == null || model.items == null) {
-                return new ArrayList<>();
-            }
-            return model.items;
+        try {
+            return BinaryHistoryFormat.open(historyFile, blobStore);
         } catch (IOException e) {
             e.printStackTrace();
-            return new ArrayList<>();
+            return HistoryReader.EMPTY;
+        }
+    }
+
+    /**
+     * Write {@code items} as pretty-printed JSON in the old history.json
+     * layout, for debugging.
+     */
+    public void exportJson(List<HistoryEntry> items, long generation, Path target) throws IOException {
+        List<String> texts = new ArrayList<>(items.size());
+        for (HistoryEntry e : items) {
+            String text = e.getText();
+            texts.add(text != null ? text : e.getPreview());
+        }
+        HistoryModel model = new HistoryModel(texts, generation);
+        try (Writer w = Files.newBufferedWriter(target)) {
+            gson.toJson(model, w);   // robust JSON, handles escaping etc.[web:209][web:212]
+        }
+    }
+
+    private void migrateJson() {
+        long start = System.nanoTime();
+        try {
+            HistoryModel model;
+            try (Reader r = Files.newBufferedReader(legacyJsonFile)) {
+                model = gson.fromJson(r, HistoryModel.class);
+            }
+            if (model == null) {
+                model = new HistoryModel(new ArrayList<>(), 0);
+            }
+            if (model.items == null) {
+                model.items = new ArrayList<>();
+            }
+            // large clips go straight to the blob store
+            long now = System.currentTimeMillis();
+            List<HistoryEntry> entries = new ArrayList<>(model.items.size());
+            for (String text : model.items) {
+                if (text != null && !text.isEmpty()) {
+                    entries.add(HistoryEntry.capture(text, now, blobStore));
+                }
+            }
+            if (!saveCheckpoint(entries, model.generation)) {
+                return;
+            }
+            Files.move(legacyJsonFile, legacyJsonFile.resolveSibling("history.json.bak"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Migrated " + model.items.size() + " history items to history.bin in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 }
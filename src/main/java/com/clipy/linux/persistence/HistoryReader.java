@@ -0,0 +1,42 @@
+package com.clipy.linux.persistence;
+
+import com.clipy.linux.history.HistoryEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Streaming access to a saved history checkpoint, newest item first, so
+ * the first page can be shown before the rest has been read.
+ */
+public interface HistoryReader extends Closeable {
+
+    /**
+     * Journal generation the checkpoint was written for.
+     */
+    long generation();
+
+    /**
+     * Pass up to {@code max} further items to {@code sink}.
+     *
+     * @return number of items passed, 0 once the checkpoint is exhausted
+     */
+    int read(int max, Consumer<HistoryEntry> sink) throws IOException;
+
+    HistoryReader EMPTY = new HistoryReader() {
+        @Override
+        public long generation() {
+            return 0;
+        }
+
+        @Override
+        public int read(int max, Consumer<HistoryEntry> sink) {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+}
@@ -0,0 +1,276 @@
+package com.clipy.linux.persistence;
+
+import com.clipy.linux.ClipboardService;
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.history.HistoryEvent;
+import com.clipy.linux.history.HistoryList;
+import com.clipy.linux.history.HistoryListener;
+import com.clipy.linux.history.HistorySnapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crash-safe history storage: a checkpoint (history.bin) plus a journal
+ * of every change made since it was written. Blobs no longer referenced by
+ * the history are collected after each checkpoint.
+ *
+ * Changes are appended to the journal as they happen, on a background
+ * thread, so a crash loses at most the change in flight. Every few minutes,
+ * or once the journal grows past {@link #COMPACT_BYTES}, the current
+ * snapshot is written as a new checkpoint generation and the journal
+ * starts over. Shutdown only flushes the journal, so it no longer depends
+ * on history size.
+ *
+ * Startup is split in two: {@link #loadHead} reads just the newest items
+ * and replays the journal over them, {@link #attach} then streams the rest
+ * of the checkpoint into ClipboardService in the background.
+ */
+public class HistoryStore implements HistoryListener {
+
+    private static final long COMPACT_BYTES = 1024 * 1024;
+    private static final long COMPACT_INTERVAL_MINUTES = 10;
+    private static final int LOAD_CHUNK = 2000;
+
+    private final HistoryPersistence checkpoints;
+    private final HistoryJournal journal;
+    private final BlobStore blobStore;
+    private final RichClipStore richStore;
+    private final ScheduledExecutorService executor;
+
+    // checkpoint still being read, and what the journal said about it
+    private HistoryReader reader;
+    private Set<Long> skipOnLoad = Set.of();
+    private boolean dropRest;
+
+    // only touched on the executor thread after loadHead()
+    private long generation;
+    private long loaderVersion;
+    private HistorySnapshot latest;
+    private boolean dirty;
+
+    public HistoryStore() {
+        this(new HistoryPersistence());
+    }
+
+    public HistoryStore(HistoryPersistence checkpoints) {
+        this.checkpoints = checkpoints;
+        this.blobStore = checkpoints.getBlobStore();
+        this.richStore = new RichClipStore(checkpoints.getConfigDir());
+        this.journal = new HistoryJournal(checkpoints.getConfigDir().resolve("history.journal"), blobStore);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "history-journal");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Where large clips are kept; pass it to ClipboardService.
+     */
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * Where images, HTML and file lists are kept; pass it to
+     * ClipboardService.
+     */
+    public RichClipStore getRichStore() {
+        return richStore;
+    }
+
+    /**
+     * Read the newest {@code headSize} checkpoint items and replay the
+     * journal on top of them.
+     *
+     * @return history items, newest first
+     */
+    public List<HistoryEntry> loadHead(int headSize) {
+        reader = checkpoints.openCheckpoint();
+        generation = reader.generation();
+
+        HistoryList list = new HistoryList();
+        try {
+            reader.read(headSize, list::addLast);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        HistoryJournal.Replay replay = new HistoryJournal.Replay(list);
+        try {
+            int replayed = journal.openAndReplay(generation, replay);
+            if (replayed > 0) {
+                System.out.println("History journal: replayed " + replayed + " changes");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        skipOnLoad = replay.evictedLater();
+        dropRest = replay.cleared();
+        return list.recent(list.size());
+    }
+
+    /**
+     * Write the saved history, journal included, as pretty-printed JSON.
+     * Read-only, so it is safe while another instance is running.
+     */
+    public void exportJson(Path target) throws IOException {
+        List<HistoryEntry> items = new ArrayList<>();
+        long gen;
+        try (HistoryReader r = checkpoints.openCheckpoint()) {
+            gen = r.generation();
+            while (r.read(Integer.MAX_VALUE, items::add) > 0) {
+                // read everything
+            }
+        }
+        HistoryList list = new HistoryList();
+        for (HistoryEntry e : items) {
+            list.addLast(e);
+        }
+        journal.replay(gen, new HistoryJournal.Replay(list));
+        checkpoints.exportJson(list.recent(list.size()), gen, target);
+    }
+
+    /**
+     * Start journaling every change made to {@code service}, and stream the
+     * part of the checkpoint that {@link #loadHead} skipped into it.
+     */
+    public void attach(ClipboardService service) {
+        latest = service.getSnapshot();
+        loaderVersion = latest.getVersion();
+        service.addHistoryListener(this, executor);
+        executor.execute(() -> loadRemainder(service));
+        executor.scheduleWithFixedDelay(this::compactIfDirty,
+                COMPACT_INTERVAL_MINUTES, COMPACT_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    // Runs on the journal thread, before any compaction can.
+    private void loadRemainder(ClipboardService service) {
+        if (reader == null) return;
+        long start = System.nanoTime();
+        int total = 0;
+        try {
+            List<HistoryEntry> chunk = new ArrayList<>(LOAD_CHUNK);
+            while (!dropRest && !service.isFull()) {
+                int n = reader.read(LOAD_CHUNK, e -> {
+                    if (skipOnLoad.isEmpty() || !skipOnLoad.contains(e.getHash())) {
+                        chunk.add(e);
+                    }
+                });
+                if (n == 0) break;
+                loaderVersion = service.appendOlder(chunk);
+                total += chunk.size();
+                chunk.clear();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+            reader = null;
+        }
+        if (total > 0) {
+            System.out.println("History: loaded " + total + " older items in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+
+    // Runs on the journal thread.
+    @Override
+    public void historyChanged(List<HistoryEvent> events, HistorySnapshot snapshot) {
+        latest = snapshot;
+        boolean replaced = false;
+        for (HistoryEvent e : events) {
+            switch (e.type()) {
+                case INSERTED, PROMOTED -> journal.appendEntry(e.item());
+                case EVICTED -> journal.appendEvict(e.item());
+                case CLEARED -> journal.appendClear();
+                case LOADED -> {
+                    // The background load only brings in what the checkpoint
+                    // already has; anything else was replaced wholesale and
+                    // has nothing to replay from, so checkpoint below. The
+                    // rest of the batch is still journaled in case that fails.
+                    if (e.version() <= loaderVersion) continue;
+                    replaced = true;
+                }
+            }
+            dirty = true;
+        }
+        try {
+            journal.flush();
+            if (replaced || journal.size() > COMPACT_BYTES) {
+                compact();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Flush the journal and stop. Anything already queued is written first.
+     */
+    public void close() {
+        try {
+            executor.submit(() -> {
+                journal.close();
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        executor.shutdown();
+    }
+
+    private void compactIfDirty() {
+        if (dirty) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        if (latest.getVersion() < loaderVersion) {
+            return; // loaded items not delivered yet, the snapshot is short
+        }
+        long next = generation + 1;
+        if (!checkpoints.saveCheckpoint(latest, next)) {
+            return; // keep appending to the current journal
+        }
+        generation = next;
+        dirty = false;
+        try {
+            journal.reset(generation);
+        } catch (IOException e) {
+            // The checkpoint is newer than the journal now, which makes the
+            // old journal stale; losing it is harmless.
+            e.printStackTrace();
+        }
+        collectBlobs();
+    }
+
+    private void collectBlobs() {
+        Set<String> live = new HashSet<>();
+        Set<Long> liveHashes = new HashSet<>();
+        for (HistoryEntry e : latest) {
+            if (!e.isInline()) live.add(e.getBlobId());
+            liveHashes.add(e.getHash());
+        }
+        int deleted = blobStore.retainOnly(live);
+        if (deleted > 0) {
+            System.out.println("History: removed " + deleted + " unused blobs");
+        }
+        deleted = richStore.retainOnly(liveHashes);
+        if (deleted > 0) {
+            System.out.println("History: removed " + deleted + " unused images/rich clips");
+        }
+    }
+}
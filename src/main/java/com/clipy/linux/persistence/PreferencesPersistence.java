@@ -38,6 +38,14 @@ public class PreferencesPersistence {
             if (m == null) return PreferencesModel.defaultPrefs();
             if (m.maxHistory <= 0) m.maxHistory = 100;
             if (m.maxTrayItems <= 0) m.maxTrayItems = 10;
+            if (m.maxHistoryMb < 0) m.maxHistoryMb = 0;
+            if (m.maxItemKb < 0) m.maxItemKb = 0;
+            if (m.maxAgeDays < 0) m.maxAgeDays = 0;
+            if (m.evictionPolicy == null) m.evictionPolicy = "LRU";
+            if (m.pasteKeyDelayMs < 0) m.pasteKeyDelayMs = 0;
+            if (m.hotkeys == null) m.hotkeys = PreferencesModel.defaultHotkeys();
+            // list actions added since the file was written
+            PreferencesModel.defaultHotkeys().forEach(m.hotkeys::putIfAbsent);
             return m;
         } catch (Exception e) {
             e.printStackTrace();
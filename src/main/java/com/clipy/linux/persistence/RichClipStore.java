@@ -0,0 +1,337 @@
+package com.clipy.linux.persistence;
+
+import com.clipy.linux.clipboard.ClipFlavor;
+import com.clipy.linux.clipboard.RichClip;
+import com.clipy.linux.clipboard.RichStore;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Heavy clipboard flavors under ~/.config/clipy-linux/rich, one directory
+ * per clip named after its content hash:
+ *
+ * <pre>
+ * rich/0123456789abcdef/content.html
+ *                      /image.png
+ *                      /thumb.png    at most THUMB_WIDTH x THUMB_HEIGHT
+ *                      /files.txt    one absolute path per line
+ * </pre>
+ *
+ * Thumbnails are made when the image is saved, from the copy already in
+ * memory, so showing one never decodes the full image.
+ *
+ * Which flavors each clip has is kept in memory (read from the directory
+ * names and files at startup), so {@link #flavorsOf} never touches disk.
+ */
+public class RichClipStore implements RichStore {
+
+    // same reasoning as the blob store's grace period
+    private static final long GC_GRACE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final String HTML_FILE = "content.html";
+    private static final String IMAGE_FILE = "image.png";
+    private static final String FILES_FILE = "files.txt";
+    private static final String THUMB_FILE = "thumb.png";
+    public static final int THUMB_WIDTH = 160;
+    public static final int THUMB_HEIGHT = 90;
+
+    private final Path dir;
+    private final Map<Long, Integer> flavors = new ConcurrentHashMap<>();
+
+    public RichClipStore(Path configDir) {
+        this.dir = configDir.resolve("rich");
+        scan();
+    }
+
+    @Override
+    public void save(long hash, RichClip clip) throws IOException {
+        Transferable t = clip.contents();
+        Path clipDir = dir.resolve(name(hash));
+        Files.createDirectories(clipDir);
+        int saved = 0;
+        if (ClipFlavor.HTML.in(clip.flavors())) {
+            String html = fetchHtml(t);
+            if (html != null) {
+                write(clipDir.resolve(HTML_FILE), html.getBytes(StandardCharsets.UTF_8));
+                saved |= ClipFlavor.HTML.bit();
+            }
+        }
+        if (ClipFlavor.IMAGE.in(clip.flavors())) {
+            Object data = fetch(t, DataFlavor.imageFlavor);
+            if (data instanceof Image image) {
+                BufferedImage full = toBuffered(image);
+                writePng(full, clipDir.resolve(IMAGE_FILE));
+                writePng(scaleDown(full), clipDir.resolve(THUMB_FILE));
+                saved |= ClipFlavor.IMAGE.bit();
+            }
+        }
+        if (ClipFlavor.FILES.in(clip.flavors())) {
+            Object data = fetch(t, DataFlavor.javaFileListFlavor);
+            if (data instanceof List<?> files && !files.isEmpty()) {
+                StringBuilder sb = new StringBuilder();
+                for (Object f : files) {
+                    sb.append(((File) f).getAbsolutePath()).append('\n');
+                }
+                write(clipDir.resolve(FILES_FILE), sb.toString().getBytes(StandardCharsets.UTF_8));
+                saved |= ClipFlavor.FILES.bit();
+            }
+        }
+        if (saved == 0) {
+            if (flavorsOf(hash) == 0) deleteTree(clipDir);
+            return;
+        }
+        flavors.merge(hash, saved, (a, b) -> a | b);
+    }
+
+    @Override
+    public int flavorsOf(long hash) {
+        return flavors.getOrDefault(hash, 0);
+    }
+
+    @Override
+    public Transferable open(long hash, String text) {
+        return new StoredClip(dir.resolve(name(hash)), flavorsOf(hash), text);
+    }
+
+    @Override
+    public Path thumbnail(long hash) {
+        if (!ClipFlavor.IMAGE.in(flavorsOf(hash))) return null;
+        Path thumb = dir.resolve(name(hash)).resolve(THUMB_FILE);
+        return Files.exists(thumb) ? thumb : null;
+    }
+
+    @Override
+    public boolean makeThumbnail(long hash) throws IOException {
+        if (!ClipFlavor.IMAGE.in(flavorsOf(hash))) return false;
+        Path clipDir = dir.resolve(name(hash));
+        Path thumb = clipDir.resolve(THUMB_FILE);
+        if (Files.exists(thumb)) return false;
+        BufferedImage full = ImageIO.read(clipDir.resolve(IMAGE_FILE).toFile());
+        if (full == null) throw new IOException("unreadable " + IMAGE_FILE);
+        writePng(scaleDown(full), thumb);
+        return true;
+    }
+
+    /**
+     * Delete clips whose hash is not in {@code liveHashes} (and older
+     * than the grace period).
+     *
+     * @return number of clips deleted
+     */
+    public int retainOnly(Set<Long> liveHashes) {
+        if (!Files.isDirectory(dir)) return 0;
+        long cutoff = System.currentTimeMillis() - GC_GRACE_MILLIS;
+        int deleted = 0;
+        try (DirectoryStream<Path> clips = Files.newDirectoryStream(dir)) {
+            for (Path clip : clips) {
+                Long hash = parse(clip.getFileName().toString());
+                if (hash == null || liveHashes.contains(hash)) continue;
+                if (Files.getLastModifiedTime(clip).toMillis() > cutoff) continue;
+                flavors.remove(hash);
+                deleteTree(clip);
+                deleted++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return deleted;
+    }
+
+    private void scan() {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> clips = Files.newDirectoryStream(dir)) {
+            for (Path clip : clips) {
+                Long hash = parse(clip.getFileName().toString());
+                if (hash == null) continue;
+                int mask = 0;
+                if (Files.exists(clip.resolve(HTML_FILE))) mask |= ClipFlavor.HTML.bit();
+                if (Files.exists(clip.resolve(IMAGE_FILE))) mask |= ClipFlavor.IMAGE.bit();
+                if (Files.exists(clip.resolve(FILES_FILE))) mask |= ClipFlavor.FILES.bit();
+                if (mask != 0) flavors.put(hash, mask);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // The whole document if offered, else any text/html the owner has.
+    private static String fetchHtml(Transferable t) throws IOException {
+        List<DataFlavor> candidates = new ArrayList<>();
+        candidates.add(DataFlavor.allHtmlFlavor);
+        for (DataFlavor f : t.getTransferDataFlavors()) {
+            if (f.isMimeTypeEqual("text/html")) candidates.add(f);
+        }
+        for (DataFlavor f : candidates) {
+            Object data = fetch(t, f);
+            if (data instanceof String s) return s;
+            if (data instanceof Reader r) {
+                try (r) {
+                    StringBuilder sb = new StringBuilder();
+                    char[] buf = new char[8192];
+                    for (int n; (n = r.read(buf)) > 0; ) sb.append(buf, 0, n);
+                    return sb.toString();
+                }
+            }
+            if (data instanceof InputStream in) {
+                try (in) {
+                    return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Object fetch(Transferable t, DataFlavor flavor) throws IOException {
+        try {
+            return t.isDataFlavorSupported(flavor) ? t.getTransferData(flavor) : null;
+        } catch (UnsupportedFlavorException e) {
+            return null;
+        }
+    }
+
+    private static BufferedImage toBuffered(Image image) {
+        if (image instanceof BufferedImage b) return b;
+        BufferedImage b = new BufferedImage(Math.max(1, image.getWidth(null)),
+                Math.max(1, image.getHeight(null)), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = b.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return b;
+    }
+
+    // Halve until close, then one bilinear step: much smoother than a
+    // single bilinear jump from a screen-sized image.
+    static BufferedImage scaleDown(BufferedImage src) {
+        double scale = Math.min(1.0, Math.min((double) THUMB_WIDTH / src.getWidth(),
+                (double) THUMB_HEIGHT / src.getHeight()));
+        int targetW = Math.max(1, (int) Math.round(src.getWidth() * scale));
+        int targetH = Math.max(1, (int) Math.round(src.getHeight() * scale));
+        BufferedImage img = src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+        do {
+            w = Math.max(targetW, w / 2);
+            h = Math.max(targetH, h / 2);
+            if (w < targetW * 2) w = targetW;
+            if (h < targetH * 2) h = targetH;
+            BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(img, 0, 0, w, h, null);
+            g.dispose();
+            img = next;
+        } while (w != targetW || h != targetH);
+        return img;
+    }
+
+    private static void writePng(BufferedImage image, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        ImageIO.write(image, "png", tmp.toFile());
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(Path file, byte[] data) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, data);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteTree(Path clip) throws IOException {
+        try (Stream<Path> files = Files.walk(clip)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static String name(long hash) {
+        return String.format("%016x", hash);
+    }
+
+    private static Long parse(String name) {
+        if (name.length() != 16) return null;
+        try {
+            return Long.parseUnsignedLong(name, 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A stored clip back on the clipboard: text right away, everything else
+     * read from disk when an application asks for it.
+     */
+    private static final class StoredClip implements Transferable {
+        private final Path clipDir;
+        private final String text;
+        private final DataFlavor[] offered;
+
+        StoredClip(Path clipDir, int mask, String text) {
+            this.clipDir = clipDir;
+            this.text = text;
+            List<DataFlavor> list = new ArrayList<>();
+            if (ClipFlavor.HTML.in(mask)) {
+                list.add(DataFlavor.allHtmlFlavor);
+                list.add(DataFlavor.fragmentHtmlFlavor);
+                list.add(DataFlavor.selectionHtmlFlavor);
+            }
+            if (ClipFlavor.IMAGE.in(mask)) list.add(DataFlavor.imageFlavor);
+            if (ClipFlavor.FILES.in(mask)) list.add(DataFlavor.javaFileListFlavor);
+            list.add(DataFlavor.stringFlavor);
+            this.offered = list.toArray(new DataFlavor[0]);
+        }
+
+        @Override
+        public DataFlavor[] getTransferDataFlavors() {
+            return offered.clone();
+        }
+
+        @Override
+        public boolean isDataFlavorSupported(DataFlavor flavor) {
+            for (DataFlavor f : offered) {
+                if (f.equals(flavor)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException {
+            if (!isDataFlavorSupported(flavor)) throw new UnsupportedFlavorException(flavor);
+            if (flavor.equals(DataFlavor.stringFlavor)) return text;
+            if (flavor.equals(DataFlavor.imageFlavor)) {
+                return ImageIO.read(clipDir.resolve(IMAGE_FILE).toFile());
+            }
+            if (flavor.equals(DataFlavor.javaFileListFlavor)) {
+                List<File> files = new ArrayList<>();
+                for (String line : Files.readAllLines(clipDir.resolve(FILES_FILE))) {
+                    if (!line.isEmpty()) files.add(new File(line));
+                }
+                return files;
+            }
+            return Files.readString(clipDir.resolve(HTML_FILE));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.clipy.linux.persistence;
+
+import com.clipy.linux.model.Snippet;
+
+import java.util.List;
+
+/**
+ * Everything saved for snippets: the snippets themselves (snippets.json)
+ * and the folder list (snippet-folders.json), which also holds folders
+ * that have no snippets yet.
+ */
+public record SnippetsData(List<Snippet> snippets, List<String> folders) {
+}
@@ -0,0 +1,195 @@
+package com.clipy.linux.persistence;
+
+import com.clipy.linux.model.Snippet;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming snippet import. Reads Clipy's XML export
+ * ({@code <folders><folder><title/><snippets><snippet><title/><content/>})
+ * and JSON, either our own snippets.json array or the same folders layout
+ * as the XML. Files are parsed token by token, never into a tree; callers
+ * add the result to the model in a single batch.
+ */
+public final class SnippetsImporter {
+
+    private static final String DEFAULT_FOLDER = "Imported";
+
+    private SnippetsImporter() {
+    }
+
+    /**
+     * Parse {@code file}, telling XML from JSON by its first character.
+     */
+    public static List<Snippet> read(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            in.mark(3);
+            if (in.read() != 0xEF || in.read() != 0xBB || in.read() != 0xBF) {
+                in.reset(); // no UTF-8 byte order mark
+            }
+            in.mark(4096);
+            int c;
+            do {
+                c = in.read();
+            } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+            in.reset();
+            return c == '<' ? readClipyXml(in) : readJson(in);
+        }
+    }
+
+    static List<Snippet> readClipyXml(InputStream in) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        List<Snippet> result = new ArrayList<>();
+        try {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            int folderStart = 0;
+            String folderTitle = null;
+            Snippet snippet = null;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (xml.getLocalName()) {
+                        case "folder" -> {
+                            folderStart = result.size();
+                            folderTitle = null;
+                        }
+                        case "snippet" -> snippet = new Snippet(null, null, null, "");
+                        case "title" -> {
+                            String title = xml.getElementText();
+                            if (snippet != null) snippet.setName(title);
+                            else folderTitle = title;
+                        }
+                        case "content" -> {
+                            if (snippet != null) snippet.setContent(xml.getElementText());
+                        }
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    switch (xml.getLocalName()) {
+                        case "snippet" -> {
+                            if (snippet != null) result.add(snippet);
+                            snippet = null;
+                        }
+                        // the title may come after the snippets
+                        case "folder" -> setFolder(result, folderStart, folderTitle);
+                        default -> {
+                        }
+                    }
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Not a Clipy snippets file: " + e.getMessage(), e);
+        }
+        setFolder(result, 0, null);
+        return result;
+    }
+
+    static List<Snippet> readJson(InputStream in) throws IOException {
+        List<Snippet> result = new ArrayList<>();
+        JsonReader json = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            if (json.peek() == JsonToken.BEGIN_ARRAY) {
+                readSnippetArray(json, result);
+            } else {
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (json.nextName().equals("folders")) {
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            readFolder(json, result);
+                        }
+                        json.endArray();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Not a snippets file: " + e.getMessage(), e);
+        }
+        setFolder(result, 0, null);
+        return result;
+    }
+
+    // [{"id", "folder", "name", "content"}, ...], as in snippets.json
+    private static void readSnippetArray(JsonReader json, List<Snippet> out) throws IOException {
+        json.beginArray();
+        while (json.hasNext()) {
+            out.add(readSnippet(json));
+        }
+        json.endArray();
+    }
+
+    // {"title": ..., "snippets": [{"title", "content"}, ...]}
+    private static void readFolder(JsonReader json, List<Snippet> out) throws IOException {
+        int start = out.size();
+        String title = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "title" -> title = nextString(json);
+                case "snippets" -> readSnippetArray(json, out);
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        setFolder(out, start, title);
+    }
+
+    private static Snippet readSnippet(JsonReader json) throws IOException {
+        Snippet s = new Snippet(null, null, null, "");
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id" -> s.setId(nextString(json));
+                case "folder" -> s.setFolder(nextString(json));
+                case "name", "title" -> s.setName(nextString(json));
+                case "content" -> {
+                    String content = nextString(json);
+                    s.setContent(content == null ? "" : content);
+                }
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return s;
+    }
+
+    private static String nextString(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextString();
+    }
+
+    // Give snippets from index start on without a folder the given one.
+    private static void setFolder(List<Snippet> snippets, int start, String folder) {
+        String name = folder == null || folder.isBlank() ? DEFAULT_FOLDER : folder;
+        for (int i = start; i < snippets.size(); i++) {
+            Snippet s = snippets.get(i);
+            if (s.getFolder() == null || s.getFolder().isBlank()) {
+                s.setFolder(name);
+            }
+        }
+    }
+}
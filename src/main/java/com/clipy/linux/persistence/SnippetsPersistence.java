@@ -5,11 +5,13 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +24,8 @@ public class SnippetsPersistence {
             "snippets.json"
     );
 
+    private static final Path FOLDERS_FILE = SNIPPETS_FILE.resolveSibling("snippet-folders.json");
+
     private static final Gson gson = new Gson();
 
     public static List<Snippet> loadSnippets() {
@@ -38,13 +42,63 @@ public class SnippetsPersistence {
         return new ArrayList<>();
     }
 
-    public static void saveSnippets(List<Snippet> snippets) {
+    /**
+     * Folder names saved by {@link #save}; empty if there are none yet.
+     */
+    public static List<String> loadFolders() {
+        try {
+            if (Files.exists(FOLDERS_FILE)) {
+                String json = Files.readString(FOLDERS_FILE, StandardCharsets.UTF_8);
+                Type listType = new TypeToken<List<String>>() {}.getType();
+                List<String> result = gson.fromJson(json, listType);
+                return result != null ? result : new ArrayList<>();
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to load snippet folders: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Write snippets and folders, each atomically.
+     *
+     * @return false if either file could not be written
+     */
+    public static boolean save(SnippetsData data) {
+        boolean ok = saveSnippets(data.snippets());
+        return writeAtomically(FOLDERS_FILE, data.folders()) && ok;
+    }
+
+    /**
+     * Write {@code snippets} atomically: to a temp file first, then renamed
+     * over snippets.json, so a crash never leaves a half-written file.
+     *
+     * @return false if the file could not be written
+     */
+    public static boolean saveSnippets(List<Snippet> snippets) {
+        return writeAtomically(SNIPPETS_FILE, snippets);
+    }
+
+    private static boolean writeAtomically(Path file, Object value) {
+        Path tmp = null;
         try {
-            Files.createDirectories(SNIPPETS_FILE.getParent());
-            String json = gson.toJson(snippets);
-            Files.writeString(SNIPPETS_FILE, json, StandardCharsets.UTF_8);
+            Files.createDirectories(file.getParent());
+            tmp = Files.createTempFile(file.getParent(), "snippets", ".tmp");
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                gson.toJson(value, w);
+            }
+            Files.move(tmp, file,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
         } catch (IOException e) {
-            System.err.println("Failed to save snippets: " + e.getMessage());
+            System.err.println("Failed to save " + file.getFileName() + ": " + e.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+            return false;
         }
     }
 }
@@ -0,0 +1,127 @@
+package com.clipy.linux.persistence;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind saving for snippets.json and the folder list.
+ * {@link #requestSave()} only marks the snippets dirty; a background thread
+ * writes them at most {@link #DEBOUNCE_MILLIS} later, so a burst of edits
+ * (typing in the snippet editor) becomes a single write. A failed write is
+ * retried with a growing delay, up to {@link #MAX_RETRY_MILLIS}, until one
+ * succeeds.
+ */
+public class SnippetsSaver {
+
+    private static final long DEBOUNCE_MILLIS = 500;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+
+    private final Supplier<SnippetsData> snapshot;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile long written;
+    private volatile long lastSaveMillis = -1;
+    private volatile boolean lastSaveFailed;
+    private int failures; // in a row, only touched on the saver thread
+    private volatile Runnable listener;
+
+    /**
+     * @param snapshot returns a copy of the snippets that is safe to
+     *                 serialize on another thread
+     */
+    public SnippetsSaver(Supplier<SnippetsData> snapshot) {
+        this.snapshot = snapshot;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snippets-saver");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Called on the saver thread after every write attempt.
+     */
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    public void requestSave() {
+        requested.incrementAndGet();
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::write, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * True while changes have been made that are not on disk yet.
+     */
+    public boolean hasPendingWrites() {
+        return requested.get() != written;
+    }
+
+    /**
+     * How long the last write took, or -1 if nothing was written yet.
+     */
+    public long getLastSaveMillis() {
+        return lastSaveMillis;
+    }
+
+    public boolean lastSaveFailed() {
+        return lastSaveFailed;
+    }
+
+    /**
+     * Write pending changes now and wait for them to be on disk.
+     */
+    public void flush() {
+        try {
+            executor.submit(this::write).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Flush and stop the saver thread.
+     */
+    public void close() {
+        flush();
+        executor.shutdown();
+    }
+
+    // Runs on the saver thread only.
+    private void write() {
+        scheduled.set(false); // requests from here on schedule another write
+        long target = requested.get();
+        if (target == written) return;
+        SnippetsData copy = snapshot.get();
+        long start = System.nanoTime();
+        boolean ok = SnippetsPersistence.save(copy);
+        lastSaveMillis = (System.nanoTime() - start) / 1_000_000;
+        lastSaveFailed = !ok;
+        if (ok) {
+            written = target;
+            failures = 0;
+        } else {
+            retryLater();
+        }
+        Runnable l = listener;
+        if (l != null) {
+            l.run();
+        }
+    }
+
+    private void retryLater() {
+        long delay = Math.min(DEBOUNCE_MILLIS << Math.min(failures, 6), MAX_RETRY_MILLIS);
+        failures++;
+        if (executor.isShutdown()) return;
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::write, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
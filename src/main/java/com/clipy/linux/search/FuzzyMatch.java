@@ -0,0 +1,12 @@
+package com.clipy.linux.search;
+
+import com.clipy.linux.history.HistoryEntry;
+
+/**
+ * One fuzzy search result.
+ *
+ * @param positions index in the entry's text of each matched query
+ *                  character, ascending
+ */
+public record FuzzyMatch(HistoryEntry entry, int score, int[] positions) {
+}
@@ -0,0 +1,83 @@
+package com.clipy.linux.search;
+
+/**
+ * fzf-style fuzzy matching: the pattern's characters must appear in the
+ * text in order, and a match scores higher the more of them sit together
+ * or start words. Both sides are expected to be case-folded already, and
+ * nothing is allocated per call.
+ *
+ * As in fzf's fast path, the match window is found with one forward scan
+ * (the earliest place the whole pattern fits) and one backward scan from
+ * its end (the shortest window ending there); only that window is scored.
+ */
+public final class FuzzyMatcher {
+
+    static final int SCORE_MATCH = 16;
+    static final int PENALTY_GAP_START = 3;
+    static final int PENALTY_GAP_EXTENSION = 1;
+    static final int BONUS_BOUNDARY = 8;
+    static final int BONUS_CONSECUTIVE = 4;
+    // the first pattern character's bonus counts this many times
+    static final int FIRST_CHAR_MULTIPLIER = 2;
+
+    private FuzzyMatcher() {
+    }
+
+    /**
+     * Score {@code pattern} against the first {@code length} chars of
+     * {@code text}.
+     *
+     * @param positions if not null, receives the text index of each
+     *                  pattern character; at least pattern.length long
+     * @return the score, or -1 if the pattern does not occur in order
+     */
+    public static int match(char[] text, int length, char[] pattern, int[] positions) {
+        int m = pattern.length;
+        if (m == 0) return 0;
+
+        int p = 0;
+        int end = -1;
+        for (int i = 0; i < length; i++) {
+            if (text[i] == pattern[p] && ++p == m) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) return -1;
+
+        p = m - 1;
+        int start = end;
+        for (int i = end; i >= 0; i--) {
+            if (text[i] == pattern[p] && --p < 0) {
+                start = i;
+                break;
+            }
+        }
+
+        int score = 0;
+        int run = 0;
+        boolean inGap = false;
+        p = 0;
+        for (int i = start; i <= end && p < m; i++) {
+            if (text[i] == pattern[p]) {
+                int bonus = isBoundary(text, i) ? BONUS_BOUNDARY : 0;
+                if (p == 0) bonus *= FIRST_CHAR_MULTIPLIER;
+                run = inGap || p == 0 ? 0 : run + 1;
+                score += SCORE_MATCH + bonus + run * BONUS_CONSECUTIVE;
+                if (positions != null) positions[p] = i;
+                p++;
+                inGap = false;
+            } else {
+                score -= inGap ? PENALTY_GAP_EXTENSION : PENALTY_GAP_START;
+                inGap = true;
+            }
+        }
+        return score;
+    }
+
+    // Start of the text, or right after something that is not a letter
+    // or digit.
+    private static boolean isBoundary(char[] text, int i) {
+        return i == 0 || !Character.isLetterOrDigit(text[i - 1]);
+    }
+}
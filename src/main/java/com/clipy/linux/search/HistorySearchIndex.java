@@ -0,0 +1,568 @@
+package com.clipy.linux.search;
+
+import com.clipy.linux.history.HistoryEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Case-insensitive substring search over clipboard history.
+ *
+ * Every item is filed, by its HistoryList sequence number, under
+ * each trigram of its case-folded searchable text. A query of three or
+ * more characters intersects the postings of its own trigrams and only
+ * the items left are checked for the real substring, newest first, so a
+ * search with a result limit stops as soon as it has enough. Shorter
+ * queries have no trigrams and fall back to a newest-first scan.
+ *
+ * Only the first {@link #MAX_INDEXED_CHARS} characters of an item are
+ * indexed; longer items are always checked.
+ *
+ * The same folded characters are kept per item for {@link #fuzzySearch},
+ * which scores every item that has the query's characters in order and
+ * keeps the best few. Typing on at the end of the previous query only
+ * re-checks what that query matched. Searches can be cancelled, for
+ * callers that run them off the UI thread.
+ *
+ * ClipboardService feeds the index item for item under its own lock.
+ * Updates only join a queue there: they are applied at once if the index
+ * is free, otherwise by the search holding it when it is done, or by the
+ * next one before it reads. A writer never waits for a search, however
+ * long it runs.
+ */
+public class HistorySearchIndex {
+
+    public static final int MAX_INDEXED_CHARS = 4096;
+
+    private static final class Posting {
+        int[] seqs = new int[4];
+        int size;
+        int dead;           // entries whose item has gone
+        boolean sorted = true;
+        int removal;        // last remove() that counted here
+
+        void add(int seq) {
+            if (size > 0 && seqs[size - 1] == seq) return; // repeated trigram
+            if (size == seqs.length) {
+                seqs = Arrays.copyOf(seqs, size * 2);
+            }
+            if (size > 0 && seqs[size - 1] > seq) sorted = false;
+            seqs[size++] = seq;
+        }
+
+        boolean contains(int seq) {
+            return Arrays.binarySearch(seqs, 0, size, seq) >= 0;
+        }
+    }
+
+    // live items by sequence number, newest last
+    private final ItemTable items = new ItemTable();
+    private final TrigramTable postings = new TrigramTable();
+    // items not fully indexed: longer than MAX_INDEXED_CHARS, or a seq
+    // that does not fit a posting
+    private final TreeMap<Long, IndexedItem> partial = new TreeMap<>();
+    private int removals;
+
+    // held while reading or applying updates
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    private static final long LOCK_POLL_MILLIS = 5;
+    private static final BooleanSupplier NEVER = () -> false;
+
+    // What the last queries matched, valid while modCount is unchanged;
+    // a query that extends one of them only re-checks its matches.
+    private long modCount;
+    private String lastSubstring;
+    private long lastSubstringModCount = -1;
+    private List<IndexedItem> lastSubstringItems = List.of();
+    private boolean lastSubstringComplete; // every match, not cut at the limit
+    private String lastFuzzy;
+    private long lastFuzzyModCount = -1;
+    private IndexedItem[] lastFuzzyMatches = new IndexedItem[0];
+    private int lastFuzzyCount;
+
+    public void add(HistoryEntry entry, long seq) {
+        update(() -> apply(entry, seq));
+    }
+
+    public void remove(HistoryEntry entry, long seq) {
+        update(() -> applyRemove(seq));
+    }
+
+    public void clear() {
+        update(this::applyClear);
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            drain();
+            return items.size();
+        } finally {
+            unlock();
+        }
+    }
+
+    // Waits for the lock, giving up if cancelled meanwhile: a query that
+    // is already stale should not queue behind the one ahead of it.
+    private boolean lock(BooleanSupplier cancelled) {
+        try {
+            while (!lock.tryLock(LOCK_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancelled.getAsBoolean()) return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            lock.lock();
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    private void update(Runnable change) {
+        pending.add(change);
+        if (lock.tryLock()) unlock();
+    }
+
+    // Applies what was queued; only with the lock held.
+    private void drain() {
+        Runnable change;
+        while ((change = pending.poll()) != null) {
+            change.run();
+        }
+    }
+
+    // Leaves nothing queued behind: an update that arrives after the
+    // last drain but before the lock is free is applied by whoever takes
+    // the lock next, or by its own writer's tryLock.
+    private void unlock() {
+        while (true) {
+            drain();
+            lock.unlock();
+            if (pending.isEmpty() || !lock.tryLock()) return;
+        }
+    }
+
+    private void apply(HistoryEntry entry, long seq) {
+        IndexedItem item = new IndexedItem(entry, seq);
+        items.add(item);
+        modCount++;
+        if (entry.getSearchableText().length() > MAX_INDEXED_CHARS || seq != (int) seq) {
+            partial.put(seq, item);
+            if (seq != (int) seq) return;
+        }
+        char[] f = item.folded;
+        for (int i = 2; i < f.length; i++) {
+            postings.getOrCreate(key(f, i)).add((int) seq);
+        }
+    }
+
+    private void applyRemove(long seq) {
+        IndexedItem item = items.remove(seq);
+        if (item == null) return;
+        modCount++;
+        partial.remove(seq);
+        if (seq != (int) seq) return;
+        // Postings keep the seq until enough of them are dead; the removal
+        // stamp makes each posting count the item once.
+        int stamp = ++removals;
+        char[] f = item.folded;
+        for (int i = 2; i < f.length; i++) {
+            Posting p = postings.get(key(f, i));
+            if (p == null || p.removal == stamp) continue;
+            p.removal = stamp;
+            if (++p.dead >= p.size) {
+                p.size = 0;
+                p.dead = 0;
+                p.sorted = true;
+            } else if (p.dead > 8 && p.dead * 2 > p.size) {
+                compact(p);
+            }
+        }
+    }
+
+    private void applyClear() {
+        modCount++;
+        items.clear();
+        postings.clear();
+        partial.clear();
+        lastSubstringItems = List.of();
+        lastFuzzyMatches = new IndexedItem[0];
+        lastFuzzyCount = 0;
+    }
+
+    /**
+     * Items containing {@code query}, ignoring case, newest first.
+     *
+     * @param limit stop after this many results
+     */
+    public List<HistoryEntry> search(String query, int limit) {
+        return search(query, limit, NEVER);
+    }
+
+    /**
+     * Like {@link #search(String, int)}, giving up when {@code cancelled}
+     * turns true.
+     *
+     * @return the matches, or null if cancelled
+     */
+    public List<HistoryEntry> search(String query, int limit, BooleanSupplier cancelled) {
+        if (!lock(cancelled)) return null;
+        try {
+            drain();
+            return searchLocked(query, limit, cancelled);
+        } finally {
+            unlock();
+        }
+    }
+
+    private List<HistoryEntry> searchLocked(String query, int limit, BooleanSupplier cancelled) {
+        if (limit <= 0) return new ArrayList<>();
+        String folded = fold(query);
+        List<IndexedItem> found = new ArrayList<>(Math.min(limit, 64));
+        int steps = 0;
+        if (folded.isEmpty()) {
+            for (int i = items.end() - 1; i >= items.start() && found.size() < limit; i--) {
+                IndexedItem item = items.at(i);
+                if (item != null) found.add(item);
+            }
+            return entries(found);
+        }
+
+        long[] keys = trigrams(folded);
+        if (lastSubstring != null && lastSubstringComplete && lastSubstringModCount == modCount
+                && folded.startsWith(lastSubstring)) {
+            // the previous query found every match, and these are among them
+            for (IndexedItem item : lastSubstringItems) {
+                if (found.size() >= limit) break;
+                if ((++steps & 255) == 0 && cancelled.getAsBoolean()) return null;
+                if (containsFolded(item.entry.getSearchableText(), folded)) found.add(item);
+            }
+        } else if (keys.length == 0) {
+            for (int i = items.end() - 1; i >= items.start() && found.size() < limit; i--) {
+                if ((++steps & 255) == 0 && cancelled.getAsBoolean()) return null;
+                IndexedItem item = items.at(i);
+                if (item != null && containsFolded(item.entry.getSearchableText(), folded)) {
+                    found.add(item);
+                }
+            }
+        } else if (!intersect(keys, folded, limit, found, cancelled)) {
+            return null;
+        }
+
+        lastSubstring = folded;
+        lastSubstringItems = found;
+        lastSubstringComplete = found.size() < limit;
+        lastSubstringModCount = modCount;
+        return entries(found);
+    }
+
+    // Candidates from the postings of keys, plus the long items, verified
+    // newest first. False if cancelled.
+    private boolean intersect(long[] keys, String folded, int limit, List<IndexedItem> found,
+                              BooleanSupplier cancelled) {
+        Posting[] lists = new Posting[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            lists[i] = postings.get(keys[i]);
+            if (lists[i] == null || lists[i].size == 0) {
+                // no indexed item has this trigram; only long items can match
+                for (IndexedItem item : partial.descendingMap().values()) {
+                    if (found.size() >= limit) break;
+                    if (cancelled.getAsBoolean()) return false;
+                    if (containsFolded(item.entry.getSearchableText(), folded)) {
+                        found.add(item);
+                    }
+                }
+                return true;
+            }
+            if (!lists[i].sorted) {
+                Arrays.sort(lists[i].seqs, 0, lists[i].size);
+                lists[i].sorted = true;
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        // Walk the shortest posting newest first, merging in long items.
+        Posting shortest = lists[0];
+        Iterator<IndexedItem> longOnes = partial.descendingMap().values().iterator();
+        IndexedItem nextLong = longOnes.hasNext() ? longOnes.next() : null;
+        int i = shortest.size - 1;
+        int steps = 0;
+        while (found.size() < limit && (i >= 0 || nextLong != null)) {
+            if ((++steps & 255) == 0 && cancelled.getAsBoolean()) return false;
+            IndexedItem item;
+            if (nextLong != null && (i < 0 || nextLong.seq >= shortest.seqs[i])) {
+                item = nextLong;
+                nextLong = longOnes.hasNext() ? longOnes.next() : null;
+                if (i >= 0 && shortest.seqs[i] == item.seq) i--;
+            } else {
+                int seq = shortest.seqs[i--];
+                if (!inAll(lists, seq)) continue;
+                item = items.get(seq);
+                if (item == null) continue; // dead posting
+            }
+            if (containsFolded(item.entry.getSearchableText(), folded)) {
+                found.add(item);
+            }
+        }
+        return true;
+    }
+
+    private static List<HistoryEntry> entries(List<IndexedItem> found) {
+        List<HistoryEntry> result = new ArrayList<>(found.size());
+        for (IndexedItem item : found) {
+            result.add(item.entry);
+        }
+        return result;
+    }
+
+    private static boolean inAll(Posting[] lists, int seq) {
+        for (int j = 1; j < lists.length; j++) {
+            if (!lists[j].contains(seq)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The {@code limit} items that match {@code query} best as a fuzzy
+     * pattern (its characters in order, gaps allowed), best first; equal
+     * scores go newest first. Matched positions index into the item's
+     * text.
+     */
+    public List<FuzzyMatch> fuzzySearch(String query, int limit) {
+        return fuzzySearch(query, limit, NEVER);
+    }
+
+    /**
+     * Like {@link #fuzzySearch(String, int)}, giving up when
+     * {@code cancelled} turns true.
+     *
+     * @return the matches, or null if cancelled
+     */
+    public List<FuzzyMatch> fuzzySearch(String query, int limit, BooleanSupplier cancelled) {
+        if (!lock(cancelled)) return null;
+        try {
+            drain();
+            return fuzzySearchLocked(query, limit, cancelled);
+        } finally {
+            unlock();
+        }
+    }
+
+    private List<FuzzyMatch> fuzzySearchLocked(String query, int limit, BooleanSupplier cancelled) {
+        char[] pattern = fold(query).toCharArray();
+        if (limit <= 0 || pattern.length == 0) return new ArrayList<>();
+        long needed = 0;
+        for (char c : pattern) {
+            needed |= charBit(c);
+        }
+
+        // Narrow down from the previous query when the user typed on.
+        String folded = new String(pattern);
+        boolean narrowing = lastFuzzy != null && lastFuzzyModCount == modCount
+                && folded.startsWith(lastFuzzy);
+        IndexedItem[] matches;
+        int count = 0;
+        TopK<IndexedItem> top = new TopK<>(limit);
+        if (narrowing) {
+            matches = new IndexedItem[Math.max(16, lastFuzzyCount)];
+            for (int i = 0; i < lastFuzzyCount; i++) {
+                if ((i & 1023) == 0 && cancelled.getAsBoolean()) return null;
+                IndexedItem item = lastFuzzyMatches[i];
+                if ((item.chars & needed) != needed) continue;
+                int score = FuzzyMatcher.match(item.folded, item.folded.length, pattern, null);
+                if (score < 0) continue;
+                matches[count++] = item;
+                top.offer(score, item.seq, item);
+            }
+        } else {
+            matches = new IndexedItem[Math.max(16, items.size())];
+            for (int i = items.end() - 1; i >= items.start(); i--) {
+                if ((i & 1023) == 0 && cancelled.getAsBoolean()) return null;
+                // masks first: most misses never touch the item
+                if ((items.maskAt(i) & needed) != needed) continue;
+                IndexedItem item = items.at(i);
+                if (item == null) continue;
+                int score = FuzzyMatcher.match(item.folded, item.folded.length, pattern, null);
+                if (score < 0) continue;
+                matches[count++] = item;
+                top.offer(score, item.seq, item);
+            }
+        }
+        lastFuzzy = folded;
+        lastFuzzyModCount = modCount;
+        lastFuzzyMatches = matches;
+        lastFuzzyCount = count;
+
+        List<FuzzyMatch> result = new ArrayList<>(top.size());
+        for (IndexedItem item : top.drainBestFirst()) {
+            int[] positions = new int[pattern.length];
+            int score = FuzzyMatcher.match(item.folded, item.folded.length, pattern, positions);
+            result.add(new FuzzyMatch(item.entry, score, positions));
+        }
+        return result;
+    }
+
+    private static long key(char[] folded, int end) {
+        return (long) folded[end - 2] << 32 | (long) folded[end - 1] << 16 | folded[end];
+    }
+
+    // Drop seqs whose item has gone.
+    private void compact(Posting p) {
+        int n = 0;
+        for (int i = 0; i < p.size; i++) {
+            if (items.get(p.seqs[i]) != null) {
+                p.seqs[n++] = p.seqs[i];
+            }
+        }
+        p.size = n;
+        p.dead = 0;
+        if (p.seqs.length > 16 && n < p.seqs.length / 4) {
+            p.seqs = Arrays.copyOf(p.seqs, Math.max(4, n * 2));
+        }
+    }
+
+    /**
+     * Distinct trigram keys of a case-folded query, sorted.
+     */
+    static long[] trigrams(String folded) {
+        int n = folded.length();
+        if (n < 3) return new long[0];
+        long[] keys = new long[n - 2];
+        long c0 = folded.charAt(0);
+        long c1 = folded.charAt(1);
+        for (int i = 2; i < n; i++) {
+            long c2 = folded.charAt(i);
+            keys[i - 2] = c0 << 32 | c1 << 16 | c2;
+            c0 = c1;
+            c1 = c2;
+        }
+        Arrays.sort(keys);
+        int distinct = 1;
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i] != keys[distinct - 1]) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        return distinct == keys.length ? keys : Arrays.copyOf(keys, distinct);
+    }
+
+    /**
+     * Whether {@code text} contains {@code folded} (already case-folded),
+     * comparing case-insensitively without copying {@code text}.
+     */
+    static boolean containsFolded(String text, String folded) {
+        int m = folded.length();
+        int last = text.length() - m;
+        if (m == 0) return true;
+        char first = folded.charAt(0);
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (fold(text.charAt(i)) != first) continue;
+            for (int j = 1; j < m; j++) {
+                if (fold(text.charAt(i + j)) != folded.charAt(j)) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    static String fold(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            sb.append(fold(s.charAt(i)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One of 64 bits standing for {@code c} in an item's character mask:
+     * a bit each for a-z and 0-9, shared bits for the rest.
+     */
+    static long charBit(char c) {
+        int bit;
+        if (c >= 'a' && c <= 'z') {
+            bit = c - 'a';
+        } else if (c >= '0' && c <= '9') {
+            bit = 26 + c - '0';
+        } else if (c < 128) {
+            bit = 36 + c % 20;
+        } else {
+            bit = 56 + c % 8;
+        }
+        return 1L << bit;
+    }
+
+    static char fold(char c) {
+        return c < 128
+                ? (c >= 'A' && c <= 'Z' ? (char) (c + 32) : c)
+                : Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Open-addressing map from trigram key to posting, so indexing does
+     * not box a Long per character. Postings are emptied, never removed.
+     */
+    private static final class TrigramTable {
+        private long[] keys = new long[1024]; // key + 1, 0 = free
+        private Posting[] values = new Posting[1024];
+        private int size;
+
+        Posting get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == 0) return null;
+                if (k == key + 1) return values[i];
+            }
+        }
+
+        Posting getOrCreate(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key + 1) return values[i];
+                if (k == 0) {
+                    Posting p = new Posting();
+                    keys[i] = key + 1;
+                    values[i] = p;
+                    if (++size * 2 > keys.length) grow();
+                    return p;
+                }
+            }
+        }
+
+        void clear() {
+            keys = new long[1024];
+            values = new Posting[1024];
+            size = 0;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            Posting[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Posting[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == 0) continue;
+                int i = slot(oldKeys[j] - 1, mask);
+                while (keys[i] != 0) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 40) & mask;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.clipy.linux.search;
+
+import com.clipy.linux.history.HistoryEntry;
+
+/**
+ * A history entry as {@link HistorySearchIndex} keeps it: its sequence
+ * number and the case-folded start of its searchable text.
+ */
+final class IndexedItem {
+
+    final HistoryEntry entry;
+    final long seq;
+    final char[] folded; // first MAX_INDEXED_CHARS chars, case-folded
+    final long chars;    // HistorySearchIndex.charBit of every char in folded
+
+    IndexedItem(HistoryEntry entry, long seq) {
+        this.entry = entry;
+        this.seq = seq;
+        String text = entry.getSearchableText();
+        folded = new char[Math.min(text.length(), HistorySearchIndex.MAX_INDEXED_CHARS)];
+        long mask = 0;
+        for (int i = 0; i < folded.length; i++) {
+            char c = HistorySearchIndex.fold(text.charAt(i));
+            folded[i] = c;
+            mask |= HistorySearchIndex.charBit(c);
+        }
+        chars = mask;
+    }
+}
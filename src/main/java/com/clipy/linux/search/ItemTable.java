@@ -0,0 +1,127 @@
+package com.clipy.linux.search;
+
+import java.util.Arrays;
+
+/**
+ * Indexed items in flat arrays sorted by sequence number, with free room
+ * at both ends: new items arrive at the newest end, saved history streams
+ * in at the oldest. Removed items leave a null behind, keeping their seq
+ * so lookups still binary-search, until enough pile up to compact.
+ *
+ * Scans walk the arrays instead of tree nodes, and check the per-item
+ * character masks, kept in their own array, before touching any text.
+ */
+final class ItemTable {
+
+    private long[] seqs = new long[16];
+    private long[] masks = new long[16];
+    private IndexedItem[] items = new IndexedItem[16];
+    private int start = 8;
+    private int end = 8;
+    private int live;
+
+    int size() {
+        return live;
+    }
+
+    int start() {
+        return start;
+    }
+
+    int end() {
+        return end;
+    }
+
+    /**
+     * Item at array position {@code i}, null if removed.
+     */
+    IndexedItem at(int i) {
+        return items[i];
+    }
+
+    long maskAt(int i) {
+        return masks[i];
+    }
+
+    void add(IndexedItem item) {
+        long seq = item.seq;
+        int pos;
+        if (end == start || seq > seqs[end - 1]) {
+            if (end == seqs.length) relayout(1, 0);
+            pos = end++;
+        } else if (seq < seqs[start]) {
+            if (start == 0) relayout(0, 1);
+            pos = --start;
+        } else {
+            // not expected from HistoryList, but keep the order anyway
+            pos = Arrays.binarySearch(seqs, start, end, seq);
+            if (pos >= 0) {
+                if (items[pos] == null) live++;
+                items[pos] = item;
+                masks[pos] = item.chars;
+                return;
+            }
+            pos = -pos - 1;
+            if (end == seqs.length) relayout(1, 0);
+            System.arraycopy(seqs, pos, seqs, pos + 1, end - pos);
+            System.arraycopy(masks, pos, masks, pos + 1, end - pos);
+            System.arraycopy(items, pos, items, pos + 1, end - pos);
+            end++;
+        }
+        seqs[pos] = seq;
+        masks[pos] = item.chars;
+        items[pos] = item;
+        live++;
+    }
+
+    IndexedItem get(long seq) {
+        int i = Arrays.binarySearch(seqs, start, end, seq);
+        return i >= 0 ? items[i] : null;
+    }
+
+    IndexedItem remove(long seq) {
+        int i = Arrays.binarySearch(seqs, start, end, seq);
+        if (i < 0 || items[i] == null) return null;
+        IndexedItem item = items[i];
+        items[i] = null;
+        masks[i] = 0;
+        live--;
+        if (live == 0) {
+            clear();
+        } else if (end - start > 32 && live * 2 < end - start) {
+            relayout(0, 0);
+        }
+        return item;
+    }
+
+    void clear() {
+        seqs = new long[16];
+        masks = new long[16];
+        items = new IndexedItem[16];
+        start = end = 8;
+        live = 0;
+    }
+
+    // Drop the holes and re-center, leaving room for at least the given
+    // number of items at each end.
+    private void relayout(int atEnd, int atStart) {
+        int capacity = Math.max(16, live * 2 + atEnd + atStart);
+        long[] newSeqs = new long[capacity];
+        long[] newMasks = new long[capacity];
+        IndexedItem[] newItems = new IndexedItem[capacity];
+        int newStart = Math.max(atStart, (capacity - live) / 2);
+        int n = newStart;
+        for (int i = start; i < end; i++) {
+            if (items[i] == null) continue;
+            newSeqs[n] = seqs[i];
+            newMasks[n] = masks[i];
+            newItems[n] = items[i];
+            n++;
+        }
+        seqs = newSeqs;
+        masks = newMasks;
+        items = newItems;
+        start = newStart;
+        end = n;
+    }
+}
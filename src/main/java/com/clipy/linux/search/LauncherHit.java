@@ -0,0 +1,27 @@
+package com.clipy.linux.search;
+
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.model.Snippet;
+
+/**
+ * One quick-launcher result: a history entry or a snippet, never both.
+ *
+ * @param label     shown before {@code shown} without highlights, e.g. a
+ *                  snippet's folder; null for history
+ * @param shown     the text to show, the one {@code positions} index into
+ * @param positions matched characters in {@code shown}, or null
+ */
+public record LauncherHit(HistoryEntry entry, Snippet snippet, String label, String shown,
+                          int score, int[] positions) {
+
+    public boolean isSnippet() {
+        return snippet != null;
+    }
+
+    /**
+     * The text to paste, or null if a history clip's blob has gone.
+     */
+    public String getText() {
+        return snippet != null ? snippet.getContent() : entry.getText();
+    }
+}
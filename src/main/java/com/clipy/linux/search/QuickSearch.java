@@ -0,0 +1,113 @@
+package com.clipy.linux.search;
+
+import com.clipy.linux.ClipboardService;
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.model.SnippetsModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The quick launcher's search over history and snippets together.
+ *
+ * Both sources are matched fuzzily and their hits ranked in one list:
+ * history by its index's score plus a bonus for recent use, snippets by
+ * the better of a name match (worth {@link SnippetSearchIndex#NAME_BONUS}
+ * more) and a content match. The snippet index is rebuilt, on the calling
+ * thread, the first time it is searched after the snippets changed.
+ *
+ * Meant to run on a {@link SearchPipeline}; not thread-safe itself.
+ */
+public class QuickSearch {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long WEEK = TimeUnit.DAYS.toMillis(7);
+
+    private final ClipboardService clipboardService;
+    private final SnippetsModel snippetsModel;
+    private SnippetSearchIndex snippetIndex;
+    private volatile long lastIndexMillis = -1;
+
+    public QuickSearch(ClipboardService clipboardService, SnippetsModel snippetsModel) {
+        this.clipboardService = clipboardService;
+        this.snippetsModel = snippetsModel;
+    }
+
+    /**
+     * The {@code limit} best hits for {@code query}, best first; an empty
+     * query gives the most recent history items.
+     *
+     * @return the hits, or null if cancelled
+     */
+    public List<LauncherHit> search(String query, int limit, BooleanSupplier cancelled) {
+        String folded = HistorySearchIndex.fold(query.trim());
+        List<LauncherHit> hits = new ArrayList<>();
+        if (folded.isEmpty()) {
+            for (HistoryEntry entry : clipboardService.getRecent(limit)) {
+                hits.add(new LauncherHit(entry, null, null, entry.getPreview(), 0, null));
+            }
+            return hits;
+        }
+        char[] pattern = folded.toCharArray();
+        long needed = 0;
+        for (char c : pattern) {
+            needed |= HistorySearchIndex.charBit(c);
+        }
+
+        long now = System.currentTimeMillis();
+        TopK<LauncherHit> top = new TopK<>(limit);
+        List<FuzzyMatch> history = clipboardService.fuzzySearch(folded, limit, cancelled);
+        if (history == null) return null;
+        for (FuzzyMatch m : history) {
+            HistoryEntry entry = m.entry();
+            int score = m.score() + recencyBonus(now - entry.getTimestamp());
+            // ties: newer history first, then snippets
+            top.offer(score, entry.getTimestamp(), new LauncherHit(entry, null, null,
+                    entry.getPreview(), score, m.positions()));
+        }
+
+        SnippetSearchIndex snippets = snippets();
+        // snippet hits are only built for the ones that make the cut
+        TopK<Integer> snippetTop = new TopK<>(limit);
+        for (int i = 0; i < snippets.size(); i++) {
+            if ((i & 255) == 0 && cancelled.getAsBoolean()) return null;
+            int score = snippets.score(i, pattern, needed);
+            if (score >= 0) snippetTop.offer(score, -i, i);
+        }
+        for (int i : snippetTop.drainBestFirst()) {
+            int score = snippets.score(i, pattern, needed);
+            top.offer(score, Long.MIN_VALUE, snippets.hit(i, pattern, score));
+        }
+        hits.addAll(top.drainBestFirst());
+        return hits;
+    }
+
+    /**
+     * How long the last rebuild of the snippet index took, or -1 before
+     * the first search.
+     */
+    public long getLastIndexMillis() {
+        return lastIndexMillis;
+    }
+
+    private SnippetSearchIndex snippets() {
+        long version = snippetsModel.getVersion();
+        if (snippetIndex == null || snippetIndex.version != version) {
+            long start = System.nanoTime();
+            snippetIndex = new SnippetSearchIndex(snippetsModel.getSnippetsSnapshot(), version);
+            lastIndexMillis = (System.nanoTime() - start) / 1_000_000;
+        }
+        return snippetIndex;
+    }
+
+    // Less than one matched character, so recency only breaks near-ties.
+    private static int recencyBonus(long age) {
+        if (age < HOUR) return 12;
+        if (age < DAY) return 8;
+        if (age < WEEK) return 4;
+        return 0;
+    }
+}
@@ -0,0 +1,204 @@
+package com.clipy.linux.search;
+
+import com.clipy.linux.ClipboardService;
+import com.clipy.linux.history.HistoryEntry;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Regular expression search over history, newest first, case-insensitive.
+ *
+ * A regex can backtrack for a very long time on the wrong input, and
+ * java.util.regex cannot be interrupted. So each item is matched through a
+ * CharSequence that checks a deadline while the matcher reads it: an item
+ * taking longer than {@link #ITEM_BUDGET_MILLIS} is skipped, and the
+ * whole query stops after {@link #QUERY_BUDGET_MILLIS} with what it has.
+ * The same check makes a superseded query give up mid-item.
+ *
+ * Compiled patterns are kept for the last {@link #CACHE_SIZE} queries,
+ * since typing and correcting a pattern revisits the same strings.
+ * Meant to run on a {@link SearchPipeline}.
+ */
+public class RegexSearch {
+
+    public static final long ITEM_BUDGET_MILLIS = 50;
+    public static final long QUERY_BUDGET_MILLIS = 2000;
+    // results so far are handed out at most this often
+    private static final long PARTIAL_EVERY_MILLIS = 100;
+    private static final int CACHE_SIZE = 32;
+    // characters read between deadline checks
+    private static final int CHECK_EVERY = 1024;
+
+    /**
+     * What one query found.
+     *
+     * @param highlights first match per entry, as positions in its text
+     * @param done       false for results handed out while still searching
+     * @param stopped    the query ran out of time before the end of history
+     * @param skipped    items given up on for exceeding the per-item budget
+     * @param error      why the pattern did not compile, else null
+     */
+    public record Result(String query, List<HistoryEntry> entries, Map<HistoryEntry, int[]> highlights,
+                         boolean done, boolean stopped, int skipped, String error) {
+    }
+
+    private final ClipboardService clipboardService;
+    private final Map<String, Pattern> cache = new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public RegexSearch(ClipboardService clipboardService) {
+        this.clipboardService = clipboardService;
+    }
+
+    /**
+     * Newest {@code limit} items in which {@code query} finds a match.
+     *
+     * @param partial receives the results so far while the search runs
+     * @return the result, or null if cancelled
+     */
+    public Result search(String query, int limit, BooleanSupplier cancelled, Consumer<Result> partial) {
+        Pattern pattern;
+        try {
+            pattern = compile(query);
+        } catch (PatternSyntaxException e) {
+            return new Result(query, List.of(), Map.of(), true, false, 0, e.getDescription());
+        }
+
+        List<HistoryEntry> entries = new ArrayList<>();
+        Map<HistoryEntry, int[]> highlights = new IdentityHashMap<>();
+        long start = System.nanoTime();
+        long queryDeadline = start + TimeUnit.MILLISECONDS.toNanos(QUERY_BUDGET_MILLIS);
+        long nextPartial = start + TimeUnit.MILLISECONDS.toNanos(PARTIAL_EVERY_MILLIS);
+        int published = 0;
+        int skipped = 0;
+        GuardedText text = new GuardedText(cancelled);
+        for (HistoryEntry entry : clipboardService.getSnapshot()) {
+            if (entries.size() >= limit) break;
+            // short items never reach the check inside GuardedText
+            if (cancelled.getAsBoolean()) return null;
+            long now = System.nanoTime();
+            if (now > queryDeadline) {
+                return result(query, entries, highlights, true, true, skipped);
+            }
+            if (now > nextPartial && entries.size() > published) {
+                partial.accept(result(query, entries, highlights, false, false, skipped));
+                published = entries.size();
+                nextPartial = now + TimeUnit.MILLISECONDS.toNanos(PARTIAL_EVERY_MILLIS);
+            }
+            text.reset(entry.getSearchableText(),
+                    Math.min(queryDeadline, now + TimeUnit.MILLISECONDS.toNanos(ITEM_BUDGET_MILLIS)));
+            try {
+                Matcher m = pattern.matcher(text);
+                if (m.find()) {
+                    entries.add(entry);
+                    highlights.put(entry, positions(m.start(), m.end()));
+                }
+            } catch (OutOfTime e) {
+                if (cancelled.getAsBoolean()) return null;
+                skipped++;
+            } catch (StackOverflowError e) {
+                // deeply nested alternations on long text
+                skipped++;
+            }
+        }
+        if (cancelled.getAsBoolean()) return null;
+        return result(query, entries, highlights, true, false, skipped);
+    }
+
+    private Pattern compile(String query) {
+        synchronized (cache) {
+            Pattern p = cache.get(query);
+            if (p == null) {
+                p = Pattern.compile(query, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                cache.put(query, p);
+            }
+            return p;
+        }
+    }
+
+    private static Result result(String query, List<HistoryEntry> entries,
+                                 Map<HistoryEntry, int[]> highlights, boolean done, boolean stopped,
+                                 int skipped) {
+        return new Result(query, List.copyOf(entries), new IdentityHashMap<>(highlights),
+                done, stopped, skipped, null);
+    }
+
+    // Every position of the match, capped to what a preview shows.
+    private static int[] positions(int start, int end) {
+        int n = Math.max(0, Math.min(end, HistoryEntry.PREVIEW_CHARS) - start);
+        int[] p = new int[n];
+        for (int i = 0; i < n; i++) {
+            p[i] = start + i;
+        }
+        return p;
+    }
+
+    /**
+     * The item's text, throwing {@link OutOfTime} from charAt once the
+     * deadline has passed or the query was cancelled.
+     */
+    private static final class GuardedText implements CharSequence {
+        private final BooleanSupplier cancelled;
+        private String text;
+        private long deadline;
+        private int reads;
+
+        GuardedText(BooleanSupplier cancelled) {
+            this.cancelled = cancelled;
+        }
+
+        void reset(String text, long deadline) {
+            this.text = text;
+            this.deadline = deadline;
+            this.reads = 0;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads % CHECK_EVERY == 0
+                    && (System.nanoTime() > deadline || cancelled.getAsBoolean())) {
+                throw OutOfTime.INSTANCE;
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    // Thrown often on bad patterns, so shared and without a stack trace.
+    private static final class OutOfTime extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final OutOfTime INSTANCE = new OutOfTime();
+
+        private OutOfTime() {
+            super("regex time budget exceeded", null, false, false);
+        }
+    }
+}
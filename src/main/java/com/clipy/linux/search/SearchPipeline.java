@@ -0,0 +1,146 @@
+package com.clipy.linux.search;
+
+import com.clipy.linux.ClipboardService;
+import com.clipy.linux.history.HistoryEntry;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Runs history searches on a background thread so typing never waits for
+ * them. Each {@link #submit} supersedes the ones before it: a stale query
+ * that has not started is skipped, one that is running gives up at its
+ * next cancellation check, and results are only delivered for the latest
+ * query. Refining a query (typing on at its end) is left to the index,
+ * which re-checks only the previous matches.
+ */
+public class SearchPipeline {
+
+    /**
+     * What one query found, delivered in one piece.
+     *
+     * @param highlights  matched positions per entry, fuzzy mode only
+     * @param latencyNanos from submit to results ready
+     */
+    public record Result(String query, boolean fuzzy, List<HistoryEntry> entries,
+                         Map<HistoryEntry, int[]> highlights, long latencyNanos) {
+
+        public long latencyMillis() {
+            return latencyNanos / 1_000_000;
+        }
+
+        Result withLatency(long nanos) {
+            return new Result(query, fuzzy, entries, highlights, nanos);
+        }
+    }
+
+    private final ClipboardService clipboardService;
+    private final Executor publisher;
+    private final ExecutorService worker;
+    private final AtomicLong latest = new AtomicLong();
+
+    /**
+     * @param publisher where results are delivered, e.g. Platform::runLater
+     */
+    public SearchPipeline(ClipboardService clipboardService, Executor publisher) {
+        this.clipboardService = clipboardService;
+        this.publisher = publisher;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "history-search");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Search in the background and hand the result to {@code onResult}
+     * on the publisher, unless a newer query was submitted meanwhile.
+     *
+     * @param limit newest matches kept in substring mode, best ones in
+     *              fuzzy mode
+     * @return the query's id, see {@link #isLatest}
+     */
+    public long submit(String query, boolean fuzzy, int limit, Consumer<Result> onResult) {
+        return submit(cancelled -> run(query, fuzzy, limit, cancelled),
+                (result, nanos) -> onResult.accept(result.withLatency(nanos)));
+    }
+
+    /**
+     * Run any search the same way: {@code search} gets a cancellation check
+     * and returns null if it gave up; {@code onResult} gets the result and
+     * the nanoseconds from submit to result ready.
+     */
+    public <T> long submit(Function<BooleanSupplier, T> search, ObjLongConsumer<T> onResult) {
+        return submitStreaming((cancelled, partial) -> search.apply(cancelled), onResult);
+    }
+
+    /**
+     * Like {@link #submit(Function, ObjLongConsumer)}, but {@code search}
+     * may also hand results so far to its second argument, which delivers
+     * them through {@code onResult} before the final one.
+     */
+    public <T> long submitStreaming(BiFunction<BooleanSupplier, Consumer<T>, T> search,
+                                    ObjLongConsumer<T> onResult) {
+        long id = latest.incrementAndGet();
+        long submitted = System.nanoTime();
+        worker.execute(() -> {
+            if (!isLatest(id)) return;
+            T result = search.apply(() -> !isLatest(id),
+                    partial -> deliver(id, partial, submitted, onResult));
+            if (result == null) return; // cancelled
+            deliver(id, result, submitted, onResult);
+        });
+        return id;
+    }
+
+    /**
+     * Drop whatever is queued or running.
+     */
+    public void cancel() {
+        latest.incrementAndGet();
+    }
+
+    public boolean isLatest(long id) {
+        return latest.get() == id;
+    }
+
+    public void close() {
+        cancel();
+        worker.shutdownNow();
+    }
+
+    private <T> void deliver(long id, T result, long submitted, ObjLongConsumer<T> onResult) {
+        long latency = System.nanoTime() - submitted;
+        publisher.execute(() -> {
+            if (isLatest(id)) onResult.accept(result, latency);
+        });
+    }
+
+    private Result run(String query, boolean fuzzy, int limit, BooleanSupplier cancelled) {
+        if (fuzzy) {
+            List<FuzzyMatch> matches = clipboardService.fuzzySearch(query, limit, cancelled);
+            if (matches == null) return null;
+            List<HistoryEntry> entries = new ArrayList<>(matches.size());
+            Map<HistoryEntry, int[]> highlights = new IdentityHashMap<>(matches.size() * 2);
+            for (FuzzyMatch m : matches) {
+                entries.add(m.entry());
+                highlights.put(m.entry(), m.positions());
+            }
+            return new Result(query, true, entries, highlights, 0);
+        }
+        List<HistoryEntry> entries = clipboardService.search(query, limit, cancelled);
+        if (entries == null) return null;
+        return new Result(query, false, entries, Map.of(), 0);
+    }
+}
@@ -0,0 +1,87 @@
+package com.clipy.linux.search;
+
+import com.clipy.linux.model.Snippet;
+
+import java.util.List;
+
+/**
+ * Snippet names and contents, case-folded once for fuzzy matching. Built
+ * from a snapshot and never changed; {@link QuickSearch} builds a new one
+ * when the snippets change.
+ *
+ * As in {@link HistorySearchIndex}, each snippet has a character mask
+ * that is checked before anything is matched, and only the first
+ * {@link HistorySearchIndex#MAX_INDEXED_CHARS} characters of a content
+ * are searched.
+ */
+final class SnippetSearchIndex {
+
+    // a match in the name beats the same match in the content
+    static final int NAME_BONUS = 16;
+
+    private final Snippet[] snippets;
+    private final char[][] names;
+    private final char[][] contents;
+    private final long[] masks;
+    final long version;
+
+    SnippetSearchIndex(List<Snippet> snapshot, long version) {
+        int n = snapshot.size();
+        this.snippets = snapshot.toArray(new Snippet[0]);
+        this.names = new char[n][];
+        this.contents = new char[n][];
+        this.masks = new long[n];
+        this.version = version;
+        for (int i = 0; i < n; i++) {
+            long[] mask = new long[1];
+            names[i] = fold(snippets[i].getName(), mask);
+            contents[i] = fold(snippets[i].getContent(), mask);
+            masks[i] = mask[0];
+        }
+    }
+
+    int size() {
+        return snippets.length;
+    }
+
+    /**
+     * Score of snippet {@code i} for {@code pattern}, whose characters'
+     * bits are {@code needed}; -1 if it does not match.
+     */
+    int score(int i, char[] pattern, long needed) {
+        if ((masks[i] & needed) != needed) return -1;
+        int name = FuzzyMatcher.match(names[i], names[i].length, pattern, null);
+        int content = FuzzyMatcher.match(contents[i], contents[i].length, pattern, null);
+        return Math.max(name < 0 ? -1 : name + NAME_BONUS, content);
+    }
+
+    /**
+     * The hit for snippet {@code i}, highlighted in its name when that is
+     * where it matched best.
+     */
+    LauncherHit hit(int i, char[] pattern, int score) {
+        Snippet snippet = snippets[i];
+        int[] positions = new int[pattern.length];
+        if (pattern.length > 0
+                && FuzzyMatcher.match(names[i], names[i].length, pattern, positions) + NAME_BONUS == score) {
+            return new LauncherHit(null, snippet, snippet.getFolder() + " / ", snippet.getName(), score, positions);
+        }
+        String content = snippet.getContent() == null ? "" : snippet.getContent();
+        if (pattern.length == 0 || FuzzyMatcher.match(contents[i], contents[i].length, pattern, positions) < 0) {
+            positions = null;
+        }
+        String label = snippet.getFolder() + " / " + snippet.getName() + ": ";
+        return new LauncherHit(null, snippet, label, content, score, positions);
+    }
+
+    private static char[] fold(String text, long[] mask) {
+        if (text == null) return new char[0];
+        char[] folded = new char[Math.min(text.length(), HistorySearchIndex.MAX_INDEXED_CHARS)];
+        for (int i = 0; i < folded.length; i++) {
+            char c = HistorySearchIndex.fold(text.charAt(i));
+            folded[i] = c;
+            mask[0] |= HistorySearchIndex.charBit(c);
+        }
+        return folded;
+    }
+}
@@ -0,0 +1,101 @@
+package com.clipy.linux.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The k best of a stream of scored values, in a fixed-size min-heap: the
+ * weakest kept value sits at the root, so most offers are one comparison.
+ * Ties go to the higher {@code order} (for history, the newer item).
+ */
+final class TopK<T> {
+
+    private final int[] scores;
+    private final long[] orders;
+    private final Object[] values;
+    private int size;
+
+    TopK(int k) {
+        int capacity = Math.max(1, Math.min(k, 1 << 16));
+        scores = new int[capacity];
+        orders = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void offer(int score, long order, T value) {
+        if (size < scores.length) {
+            set(size, score, order, value);
+            siftUp(size++);
+        } else if (weaker(0, score, order)) {
+            set(0, score, order, value);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Everything kept, best first. Empties the heap.
+     */
+    @SuppressWarnings("unchecked")
+    List<T> drainBestFirst() {
+        Object[] out = new Object[size];
+        for (int i = size - 1; i >= 0; i--) {
+            out[i] = values[0];
+            size--;
+            if (size > 0) {
+                set(0, scores[size], orders[size], values[size]);
+                siftDown(0);
+            }
+            values[size] = null;
+        }
+        List<T> result = new ArrayList<>(out.length);
+        for (Object o : out) {
+            result.add((T) o);
+        }
+        return result;
+    }
+
+    // whether the kept value at i ranks below (score, order)
+    private boolean weaker(int i, int score, long order) {
+        return scores[i] < score || (scores[i] == score && orders[i] < order);
+    }
+
+    private void set(int i, int score, long order, Object value) {
+        scores[i] = score;
+        orders[i] = order;
+        values[i] = value;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!weaker(i, scores[parent], orders[parent])) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) return;
+            int child = left;
+            int right = left + 1;
+            if (right < size && weaker(right, scores[left], orders[left])) child = right;
+            if (!weaker(child, scores[i], orders[i])) return;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int s = scores[a];
+        long o = orders[a];
+        Object v = values[a];
+        set(a, scores[b], orders[b], values[b]);
+        set(b, s, o, v);
+    }
+}
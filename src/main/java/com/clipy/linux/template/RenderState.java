@@ -0,0 +1,26 @@
+package com.clipy.linux.template;
+
+/**
+ * One render in progress: the output so far, where {cursor} was, and the
+ * clipboard, read at most once however often it is used.
+ */
+final class RenderState {
+
+    final StringBuilder out = new StringBuilder();
+    final TemplateContext context;
+    int cursor = -1;
+    int depth;
+    private String clipboard;
+
+    RenderState(TemplateContext context) {
+        this.context = context;
+    }
+
+    String clipboard() {
+        if (clipboard == null) {
+            String c = context.clipboard();
+            clipboard = c == null ? "" : c;
+        }
+        return clipboard;
+    }
+}
@@ -0,0 +1,61 @@
+package com.clipy.linux.template;
+
+import com.clipy.linux.ClipboardService;
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.history.HistorySnapshot;
+import com.clipy.linux.model.Snippet;
+import com.clipy.linux.model.SnippetsModel;
+
+/**
+ * Turns a snippet into the text to paste, filling in its placeholders
+ * from the clipboard and history. Templates come compiled from
+ * {@link SnippetsModel#getTemplate}, so nothing is parsed here.
+ */
+public class SnippetRenderer implements TemplateContext {
+
+    /**
+     * @param caretBack how far to move the caret left after pasting
+     *                  {@code text} to reach {cursor}; 0 if there is none
+     */
+    public record Rendered(String text, int caretBack) {
+    }
+
+    private final SnippetsModel snippetsModel;
+    private final ClipboardService clipboardService;
+
+    public SnippetRenderer(SnippetsModel snippetsModel, ClipboardService clipboardService) {
+        this.snippetsModel = snippetsModel;
+        this.clipboardService = clipboardService;
+    }
+
+    public Rendered render(Snippet snippet) {
+        Template template = snippetsModel.getTemplate(snippet);
+        if (template.isStatic()) {
+            return new Rendered(template.staticText(), 0);
+        }
+        RenderState state = new RenderState(this);
+        template.render(state);
+        String text = state.out.toString();
+        return new Rendered(text, state.cursor < 0 ? 0 : text.length() - state.cursor);
+    }
+
+    @Override
+    public String clipboard() {
+        return clipboardService.getClipboardText();
+    }
+
+    @Override
+    public String history(int n) {
+        HistorySnapshot s = clipboardService.getSnapshot();
+        if (n > s.size()) return "";
+        HistoryEntry entry = s.get(n - 1);
+        String text = entry.getText();
+        return text == null ? "" : text;
+    }
+
+    @Override
+    public Template include(String ref) {
+        Snippet s = snippetsModel.findSnippet(ref);
+        return s == null ? null : snippetsModel.getTemplate(s);
+    }
+}
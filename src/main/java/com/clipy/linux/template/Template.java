@@ -0,0 +1,172 @@
+package com.clipy.linux.template;
+
+import java.time.DateTimeException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A snippet's content parsed once into literal text and placeholders, so
+ * that a paste only renders:
+ *
+ * <pre>
+ * {date}  {date:HH:mm}     current date/time, java.time pattern (default yyyy-MM-dd)
+ * {clipboard}              what is on the clipboard now
+ * {history:N}              the N-th newest history item, {history} = the newest
+ * {cursor}                 leave the caret here after pasting
+ * {snippet:Folder/Name}    another snippet, rendered in place ({snippet:Name} too)
+ * {{date}}                 a literal {date}
+ * </pre>
+ *
+ * Anything else in braces is plain text, so code snippets paste as they
+ * always did.
+ */
+public final class Template {
+
+    private static final DateTimeFormatter DEFAULT_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    // includes deeper than this are left out, which also ends cycles
+    static final int MAX_DEPTH = 8;
+
+    private sealed interface Part permits Literal, Date, Clipboard, History, Cursor, Include {
+    }
+
+    private record Literal(String text) implements Part {
+    }
+
+    private record Date(DateTimeFormatter format) implements Part {
+    }
+
+    private record Clipboard() implements Part {
+    }
+
+    private record History(int n) implements Part {
+    }
+
+    private record Cursor() implements Part {
+    }
+
+    private record Include(String ref) implements Part {
+    }
+
+    private final Part[] parts;
+    private final String text; // the whole result when there are no placeholders
+
+    private Template(List<Part> parts) {
+        this.parts = parts.toArray(new Part[0]);
+        this.text = parts.isEmpty() ? ""
+                : parts.size() == 1 && parts.get(0) instanceof Literal l ? l.text() : null;
+    }
+
+    public static Template compile(String source) {
+        List<Part> parts = new ArrayList<>();
+        if (source == null) return new Template(parts);
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        int n = source.length();
+        while (i < n) {
+            char c = source.charAt(i);
+            if (c == '{') {
+                boolean escaped = i + 1 < n && source.charAt(i + 1) == '{';
+                int start = escaped ? i + 2 : i + 1;
+                int end = source.indexOf('}', start);
+                if (end >= 0 && (!escaped || source.startsWith("}}", end))) {
+                    Part part = placeholder(source.substring(start, end));
+                    if (part != null) {
+                        if (escaped) {
+                            literal.append(source, i + 1, end + 1);
+                            i = end + 2;
+                        } else {
+                            flush(literal, parts);
+                            parts.add(part);
+                            i = end + 1;
+                        }
+                        continue;
+                    }
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        flush(literal, parts);
+        return new Template(parts);
+    }
+
+    /**
+     * Whether rendering can only give the same text every time.
+     */
+    public boolean isStatic() {
+        return text != null;
+    }
+
+    String staticText() {
+        return text;
+    }
+
+    void render(RenderState state) {
+        if (text != null) {
+            state.out.append(text);
+            return;
+        }
+        for (Part part : parts) {
+            switch (part) {
+                case Literal l -> state.out.append(l.text());
+                case Date d -> state.out.append(d.format().format(ZonedDateTime.now()));
+                case Clipboard ignored -> state.out.append(state.clipboard());
+                case History h -> state.out.append(state.context.history(h.n()));
+                case Cursor ignored -> {
+                    if (state.cursor < 0) state.cursor = state.out.length();
+                }
+                case Include inc -> {
+                    Template t = state.depth < MAX_DEPTH ? state.context.include(inc.ref()) : null;
+                    if (t != null) {
+                        state.depth++;
+                        t.render(state);
+                        state.depth--;
+                    }
+                }
+            }
+        }
+    }
+
+    // The part for what is between the braces, or null if it is no placeholder.
+    private static Part placeholder(String tag) {
+        int colon = tag.indexOf(':');
+        String name = colon < 0 ? tag : tag.substring(0, colon);
+        String arg = colon < 0 ? null : tag.substring(colon + 1);
+        switch (name) {
+            case "date":
+                if (arg == null) return new Date(DEFAULT_DATE);
+                try {
+                    DateTimeFormatter format = DateTimeFormatter.ofPattern(arg);
+                    format.format(ZonedDateTime.now()); // fields no date-time has
+                    return new Date(format);
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    return null;
+                }
+            case "clipboard":
+                return arg == null ? new Clipboard() : null;
+            case "cursor":
+                return arg == null ? new Cursor() : null;
+            case "history":
+                if (arg == null) return new History(1);
+                try {
+                    int n = Integer.parseInt(arg.trim());
+                    return n >= 1 ? new History(n) : null;
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            case "snippet":
+                return arg == null || arg.isBlank() ? null : new Include(arg.trim());
+            default:
+                return null;
+        }
+    }
+
+    private static void flush(StringBuilder literal, List<Part> parts) {
+        if (literal.length() > 0) {
+            parts.add(new Literal(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+}
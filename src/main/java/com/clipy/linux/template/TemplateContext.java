@@ -0,0 +1,20 @@
+package com.clipy.linux.template;
+
+/**
+ * Where placeholders get their values from when a {@link Template} renders.
+ */
+public interface TemplateContext {
+
+    String clipboard();
+
+    /**
+     * Text of the {@code n}-th newest history item (1 = newest), or "".
+     */
+    String history(int n);
+
+    /**
+     * The compiled template of the snippet {@code ref} names ("Folder/Name"
+     * or "Name"), or null if there is none.
+     */
+    Template include(String ref);
+}
@@ -1,37 +1,78 @@
 package com.clipy.linux.view;
 
 import com.clipy.linux.ClipboardService;
+import com.clipy.linux.clipboard.ClipFlavor;
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.history.HistoryEvent;
+import com.clipy.linux.history.HistorySnapshot;
+import com.clipy.linux.paste.PasteEngine;
+import com.clipy.linux.persistence.RichClipStore;
+import com.clipy.linux.search.RegexSearch;
+import com.clipy.linux.search.SearchPipeline;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TextField;
+import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class HistoryView {
 
     private final ClipboardService clipboardService;
+    private final PasteEngine pasteEngine;
 
     private Stage stage;
-    private ListView<String> listView;
+    private ListView<HistoryEntry> listView;
     private TextField searchField;
-    private FilteredList<String> filteredItems;
+    // newest matches shown for a query
+    private static final int SEARCH_LIMIT = 1000;
+    // best matches shown in fuzzy mode
+    private static final int FUZZY_LIMIT = 200;
+    private static final String MATCH_STYLE = "-fx-font-weight: bold; -fx-fill: #1a73e8;";
 
-    public HistoryView(ClipboardService clipboardService) {
+    private final SnapshotList baseList = new SnapshotList();
+    private final ObservableList<HistoryEntry> searchResults = FXCollections.observableArrayList();
+    private String query = "";
+    private CheckBox fuzzyBox;
+    private CheckBox regexBox;
+    private Label searchStatus;
+    private final SearchPipeline searchPipeline;
+    private final RegexSearch regexSearch;
+    // matched positions of the fuzzy results on screen
+    private final Map<HistoryEntry, int[]> highlights = new IdentityHashMap<>();
+    private long shownVersion = -1;
+    private final ThumbnailCache thumbnails;
+    private boolean refreshPending;
+
+    public HistoryView(ClipboardService clipboardService, PasteEngine pasteEngine) {
         this.clipboardService = clipboardService;
+        this.pasteEngine = pasteEngine;
+        this.searchPipeline = new SearchPipeline(clipboardService, Platform::runLater);
+        this.regexSearch = new RegexSearch(clipboardService);
+        this.thumbnails = new ThumbnailCache(clipboardService);
     }
 
     public void init(Stage owner) {
@@ -43,29 +84,39 @@ public class HistoryView {
 
         listView = new ListView<>();
         listView.setFocusTraversable(false);
+        // several items selected = paste them one per Ctrl+V
+        listView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        listView.setCellFactory(list -> new HistoryCell());
 
         searchField = new TextField();
         searchField.setPromptText("Search history...");
+        fuzzyBox = new CheckBox("Fuzzy");
+        regexBox = new CheckBox("Regex");
+        // one mode at a time
+        fuzzyBox.setOnAction(e -> {
+            if (fuzzyBox.isSelected()) regexBox.setSelected(false);
+            runSearch();
+            searchField.requestFocus();
+        });
+        regexBox.setOnAction(e -> {
+            if (regexBox.isSelected()) fuzzyBox.setSelected(false);
+            runSearch();
+            searchField.requestFocus();
+        });
+        searchStatus = new Label();
 
-        Deque<String> history = clipboardService.getHistory();
-        ObservableList<String> baseList =
-                FXCollections.observableArrayList(new ArrayList<>(history));
-        filteredItems = new FilteredList<>(baseList, s -> true);
-        listView.setItems(filteredItems);
+        listView.setItems(baseList);
+        clipboardService.addHistoryListener(this::applyChanges, Platform::runLater);
+        // an image's row is drawn before the image is saved
+        clipboardService.addRichListener(hash -> {
+            thumbnails.retry(hash);
+            refreshSoon();
+        }, Platform::runLater);
+        resync(clipboardService.getSnapshot());
 
         searchField.textProperty().addListener((obs, oldV, newV) -> {
-            String query = newV == null ? "" : newV.trim().toLowerCase();
-
-            filteredItems.setPredicate(s -> {
-                if (query.isEmpty()) return true;
-                if (s == null) return false;
-                String text = s.toLowerCase();
-                return text.contains(query);
-            });
-
-            if (!filteredItems.isEmpty()) {
-                listView.getSelectionModel().selectFirst();
-            }
+            query = newV == null ? "" : newV.trim();
+            runSearch();
         });
 
         listView.setOnKeyPressed(e -> {
@@ -92,10 +143,15 @@ public class HistoryView {
             }
         });
 
-        Label hint = new Label("Type to filter, Enter to select, Esc to close.");
+        Label hint = new Label("Type to filter (Fuzzy: letters in order, best match first; "
+                + "Regex: Java regular expression), Enter to select, Esc to close. Select several items to paste them one per Ctrl+V.");
         hint.setPadding(new Insets(4, 0, 6, 0));
 
-        VBox topBox = new VBox(6, searchField, hint);
+        HBox searchRow = new HBox(8, searchField, fuzzyBox, regexBox, searchStatus);
+        searchRow.setAlignment(Pos.CENTER_LEFT);
+        HBox.setHgrow(searchField, Priority.ALWAYS);
+
+        VBox topBox = new VBox(6, searchRow, hint);
         topBox.setPadding(new Insets(10));
 
         BorderPane root = new BorderPane();
@@ -122,11 +178,20 @@ public class HistoryView {
 
     // Show centered (used from main window)
     public void show() {
+        show(null);
+    }
+
+    /**
+     * Show centered, then run {@code onVisible} (if not null) on the FX
+     * thread.
+     */
+    public void show(Runnable onVisible) {
         Platform.runLater(() -> {
             refreshItems();
             stage.centerOnScreen();
             stage.show();
             stage.toFront();
+            if (onVisible != null) onVisible.run();
             Platform.runLater(() -> {
                 searchField.requestFocus();
                 searchField.positionCaret(searchField.getText().length());
@@ -149,14 +214,175 @@ public class HistoryView {
         });
     }
 
+    // Runs on the FX thread with every change since the last call.
+    private void applyChanges(List<HistoryEvent> events, HistorySnapshot snapshot) {
+        if (!baseList.apply(events, shownVersion, snapshot)) {
+            resync(snapshot);
+            return;
+        }
+        shownVersion = snapshot.getVersion();
+        if (!query.isEmpty() && stage.isShowing()) {
+            runSearch();
+        }
+    }
+
+    private void resync(HistorySnapshot snapshot) {
+        baseList.reset(snapshot);
+        shownVersion = snapshot.getVersion();
+        if (!query.isEmpty()) {
+            runSearch();
+        }
+    }
+
+    // Searches run on the pipeline's thread; the list keeps showing the
+    // previous results until the new ones arrive.
+    private void runSearch() {
+        if (query.isEmpty()) {
+            searchPipeline.cancel();
+            highlights.clear();
+            listView.setItems(baseList);
+            searchResults.clear();
+            searchStatus.setText("");
+            selectFirst();
+            return;
+        }
+        if (regexBox.isSelected()) {
+            // untrimmed: spaces can matter in a pattern
+            String pattern = searchField.getText();
+            searchPipeline.submitStreaming(
+                    (cancelled, partial) -> regexSearch.search(pattern, SEARCH_LIMIT, cancelled, partial),
+                    this::showRegexResults);
+            return;
+        }
+        boolean fuzzy = fuzzyBox.isSelected();
+        searchPipeline.submit(query, fuzzy, fuzzy ? FUZZY_LIMIT : SEARCH_LIMIT, this::showResults);
+    }
+
+    // On the FX thread, only for the latest query.
+    private void showResults(SearchPipeline.Result result) {
+        highlights.clear();
+        highlights.putAll(result.highlights());
+        searchResults.setAll(result.entries());
+        listView.setItems(searchResults);
+        int limit = fuzzyBox.isSelected() ? FUZZY_LIMIT : SEARCH_LIMIT;
+        searchStatus.setText(matches(result.entries().size(), limit)
+                + " in " + result.latencyMillis() + " ms");
+        selectFirst();
+    }
+
+    // On the FX thread; several times per query while it is still running.
+    private void showRegexResults(RegexSearch.Result result, long latencyNanos) {
+        highlights.clear();
+        highlights.putAll(result.highlights());
+        searchResults.setAll(result.entries());
+        listView.setItems(searchResults);
+        String status;
+        if (result.error() != null) {
+            status = "Bad pattern: " + result.error();
+        } else {
+            status = matches(result.entries().size(), SEARCH_LIMIT)
+                    + " in " + latencyNanos / 1_000_000 + " ms";
+            if (!result.done()) status += ", searching...";
+            if (result.stopped()) status += ", stopped (too slow)";
+            if (result.skipped() > 0) status += ", " + result.skipped() + " items skipped (too slow)";
+        }
+        searchStatus.setText(status);
+        if (listView.getSelectionModel().isEmpty()) selectFirst();
+    }
+
+    // A search stops at its limit, so a full page means there are more.
+    private static String matches(int count, int limit) {
+        if (count >= limit) return limit + "+ matches, showing " + limit;
+        return count + (count == 1 ? " match" : " matches");
+    }
+
+    private void selectFirst() {
+        if (!listView.getItems().isEmpty()) {
+            listView.getSelectionModel().selectFirst();
+        }
+    }
+
+    // Preview text, with fuzzy-matched characters highlighted.
+    private class HistoryCell extends ListCell<HistoryEntry> {
+        @Override
+        protected void updateItem(HistoryEntry item, boolean empty) {
+            super.updateItem(item, empty);
+            int[] positions = empty || item == null ? null : highlights.get(item);
+            if (empty || item == null) {
+                setText(null);
+                setGraphic(null);
+            } else if (ClipFlavor.IMAGE.in(clipboardService.getRichFlavors(item.getHash()))) {
+                setText(null);
+                Node label = positions == null ? new Label(item.toString())
+                        : highlighted(item.getPreview(), positions);
+                HBox row = new HBox(6, thumbnailView(item.getHash()), label);
+                row.setAlignment(Pos.CENTER_LEFT);
+                setGraphic(row);
+            } else if (positions == null) {
+                setText(item.toString());
+                setGraphic(null);
+            } else {
+                setText(null);
+                setGraphic(highlighted(item.getPreview(), positions));
+            }
+        }
+    }
+
+    // Fixed size, so rows do not jump when the thumbnail comes in.
+    private ImageView thumbnailView(long hash) {
+        ImageView view = new ImageView(thumbnails.get(hash, this::refreshSoon));
+        view.setFitWidth(RichClipStore.THUMB_WIDTH / 2.0);
+        view.setFitHeight(RichClipStore.THUMB_HEIGHT / 2.0);
+        view.setPreserveRatio(true);
+        view.setSmooth(true);
+        return view;
+    }
+
+    // Several thumbnails or saves often land together: redraw once for all
+    // of them.
+    private void refreshSoon() {
+        if (refreshPending) return;
+        refreshPending = true;
+        Platform.runLater(() -> {
+            refreshPending = false;
+            if (listView != null) listView.refresh();
+        });
+    }
+
+    /**
+     * The thumbnail cache's numbers, or null before the first image was
+     * shown. FX thread only.
+     */
+    public String describeThumbnails() {
+        if (thumbnails.getHits() + thumbnails.getMisses() == 0) return null;
+        return thumbnails.describe();
+    }
+
+    /**
+     * Stop loading thumbnails.
+     */
+    public void close() {
+        thumbnails.close();
+    }
+
+    private static TextFlow highlighted(String text, int[] positions) {
+        TextFlow flow = new TextFlow();
+        int from = 0;
+        for (int p : positions) {
+            if (p >= text.length()) break;
+            if (p > from) flow.getChildren().add(new Text(text.substring(from, p)));
+            Text match = new Text(text.substring(p, p + 1));
+            match.setStyle(MATCH_STYLE);
+            flow.getChildren().add(match);
+            from = p + 1;
+        }
+        if (from < text.length()) flow.getChildren().add(new Text(text.substring(from)));
+        return flow;
+    }
+
     private void refreshItems() {
-        Deque<String> history = clipboardService.getHistory();
-        List<String> list = new ArrayList<>(history);
-        ObservableList<String> baseList = FXCollections.observableArrayList(list);
-        filteredItems = new FilteredList<>(baseList, s -> true);
-        listView.setItems(filteredItems);
         searchField.clear();
-        if (!filteredItems.isEmpty()) {
+        if (!listView.getItems().isEmpty()) {
             listView.getSelectionModel().selectFirst();
         }
     }
@@ -166,10 +392,23 @@ public class HistoryView {
     }
 
     private void useSelected() {
-        String selected = listView.getSelectionModel().getSelectedItem();
-        if (selected != null) {
-            clipboardService.setClipboardText(selected);
+        List<HistoryEntry> selectedItems = listView.getSelectionModel().getSelectedItems();
+        if (selectedItems.size() > 1) {
+            // top to bottom, the order they are shown in
+            List<HistoryEntry> queue = new ArrayList<>(selectedItems.size());
+            for (int i : listView.getSelectionModel().getSelectedIndices().sorted()) {
+                queue.add(listView.getItems().get(i));
+            }
+            hide();
+            pasteEngine.queue(queue);
+            return;
         }
+        HistoryEntry selected = listView.getSelectionModel().getSelectedItem();
+        String text = selected == null ? null : selected.getText();
+        // hide first so the paste lands in the window we were opened over
         hide();
+        if (text != null) {
+            pasteEngine.paste(text);
+        }
     }
 }
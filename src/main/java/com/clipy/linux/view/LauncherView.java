@@ -0,0 +1,240 @@
+package com.clipy.linux.view;
+
+import com.clipy.linux.ClipboardService;
+import com.clipy.linux.model.SnippetsModel;
+import com.clipy.linux.paste.PasteEngine;
+import com.clipy.linux.search.LauncherHit;
+import com.clipy.linux.search.QuickSearch;
+import com.clipy.linux.search.SearchPipeline;
+import com.clipy.linux.template.SnippetRenderer;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+
+import java.util.List;
+
+/**
+ * Quick launcher: one search field over history and snippets, driven from
+ * the keyboard. Up/Down move through the results without leaving the
+ * field, Enter pastes the selected one, Esc closes.
+ */
+public class LauncherView {
+
+    private static final int LIMIT = 50;
+    private static final String MATCH_STYLE = "-fx-font-weight: bold; -fx-fill: #1a73e8;";
+    private static final String SNIPPET_STYLE = "-fx-fill: #888888;";
+
+    private final PasteEngine pasteEngine;
+    private final SnippetRenderer renderer;
+    private final QuickSearch quickSearch;
+    private final SearchPipeline searchPipeline;
+
+    private Stage stage;
+    private TextField searchField;
+    private ListView<LauncherHit> listView;
+    private Label searchStatus;
+    private final ObservableList<LauncherHit> results = FXCollections.observableArrayList();
+
+    public LauncherView(ClipboardService clipboardService, SnippetsModel snippetsModel,
+                        PasteEngine pasteEngine, SnippetRenderer renderer) {
+        this.pasteEngine = pasteEngine;
+        this.renderer = renderer;
+        this.quickSearch = new QuickSearch(clipboardService, snippetsModel);
+        this.searchPipeline = new SearchPipeline(clipboardService, Platform::runLater);
+    }
+
+    public void init(Stage owner) {
+        stage = new Stage(StageStyle.UTILITY);
+        stage.initOwner(owner);
+        stage.initModality(Modality.NONE);
+        stage.setTitle("Quick Launcher");
+        stage.setAlwaysOnTop(true);
+
+        searchField = new TextField();
+        searchField.setPromptText("Search history and snippets...");
+        searchStatus = new Label();
+
+        listView = new ListView<>(results);
+        listView.setFocusTraversable(false);
+        listView.setCellFactory(list -> new HitCell());
+
+        searchField.textProperty().addListener((obs, oldV, newV) -> runSearch());
+        searchField.setOnKeyPressed(e -> {
+            switch (e.getCode()) {
+                case DOWN -> {
+                    move(1);
+                    e.consume();
+                }
+                case UP -> {
+                    move(-1);
+                    e.consume();
+                }
+                case ENTER -> useSelected();
+                case ESCAPE -> hide();
+                default -> {
+                }
+            }
+        });
+        listView.setOnMouseClicked(e -> {
+            if (e.getClickCount() == 2) {
+                useSelected();
+            }
+        });
+
+        HBox searchRow = new HBox(8, searchField, searchStatus);
+        searchRow.setAlignment(Pos.CENTER_LEFT);
+        HBox.setHgrow(searchField, Priority.ALWAYS);
+
+        Label hint = new Label("Up/Down to choose, Enter to paste, Esc to close. Snippets are marked grey.");
+        VBox topBox = new VBox(6, searchRow, hint);
+        topBox.setPadding(new Insets(10));
+
+        BorderPane root = new BorderPane();
+        root.setTop(topBox);
+        root.setCenter(listView);
+
+        Scene scene = new Scene(root, 700, 420);
+        scene.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ESCAPE) {
+                hide();
+            }
+        });
+        stage.setScene(scene);
+
+        stage.focusedProperty().addListener((obs, oldV, newV) -> {
+            if (newV) {
+                Platform.runLater(() -> searchField.requestFocus());
+            }
+        });
+    }
+
+    public void show() {
+        show(null);
+    }
+
+    /**
+     * Show centered, then run {@code onVisible} (if not null) on the FX
+     * thread.
+     */
+    public void show(Runnable onVisible) {
+        Platform.runLater(() -> {
+            searchField.clear();
+            runSearch();
+            stage.centerOnScreen();
+            stage.show();
+            stage.toFront();
+            if (onVisible != null) onVisible.run();
+            Platform.runLater(() -> searchField.requestFocus());
+        });
+    }
+
+    public void hide() {
+        Platform.runLater(() -> stage.hide());
+    }
+
+    /**
+     * How long the last rebuild of the snippet index took, or -1 before
+     * the first search.
+     */
+    public long getSnippetIndexMillis() {
+        return quickSearch.getLastIndexMillis();
+    }
+
+    // Results replace the list as they arrive; the old ones stay up until then.
+    private void runSearch() {
+        String query = searchField.getText() == null ? "" : searchField.getText();
+        searchPipeline.submit(cancelled -> quickSearch.search(query, LIMIT, cancelled),
+                this::showResults);
+    }
+
+    // On the FX thread, only for the latest query.
+    private void showResults(List<LauncherHit> hits, long latencyNanos) {
+        results.setAll(hits);
+        searchStatus.setText(hits.size() + " in " + latencyNanos / 1_000_000 + " ms");
+        if (!results.isEmpty()) {
+            listView.getSelectionModel().selectFirst();
+            listView.scrollTo(0);
+        }
+    }
+
+    private void move(int delta) {
+        if (results.isEmpty()) return;
+        int i = listView.getSelectionModel().getSelectedIndex() + delta;
+        i = Math.max(0, Math.min(i, results.size() - 1));
+        listView.getSelectionModel().select(i);
+        listView.scrollTo(Math.max(0, i - 3));
+    }
+
+    private void useSelected() {
+        LauncherHit hit = listView.getSelectionModel().getSelectedItem();
+        // hide first so the paste lands in the window we were opened over
+        hide();
+        if (hit == null) return;
+        if (hit.isSnippet()) {
+            SnippetRenderer.Rendered r = renderer.render(hit.snippet());
+            pasteEngine.paste(r.text(), r.caretBack());
+        } else {
+            pasteEngine.paste(hit.getText());
+        }
+    }
+
+    // Snippets get their folder (and name) in front; matches are highlighted.
+    private static class HitCell extends ListCell<LauncherHit> {
+        @Override
+        protected void updateItem(LauncherHit hit, boolean empty) {
+            super.updateItem(hit, empty);
+            setText(null);
+            if (empty || hit == null) {
+                setGraphic(null);
+                return;
+            }
+            TextFlow flow = new TextFlow();
+            if (hit.label() != null) {
+                Text tag = new Text(hit.label());
+                tag.setStyle(SNIPPET_STYLE);
+                flow.getChildren().add(tag);
+            }
+            addHighlighted(flow, oneLine(hit.shown()), hit.positions());
+            setGraphic(flow);
+        }
+    }
+
+    private static void addHighlighted(TextFlow flow, String text, int[] positions) {
+        int from = 0;
+        if (positions != null) {
+            for (int p : positions) {
+                if (p >= text.length()) break;
+                if (p > from) flow.getChildren().add(new Text(text.substring(from, p)));
+                Text match = new Text(text.substring(p, p + 1));
+                match.setStyle(MATCH_STYLE);
+                flow.getChildren().add(match);
+                from = p + 1;
+            }
+        }
+        if (from < text.length()) flow.getChildren().add(new Text(text.substring(from)));
+    }
+
+    // Same length, so match positions still line up.
+    private static String oneLine(String text) {
+        if (text == null) return "";
+        String cut = text.length() > 200 ? text.substring(0, 200) : text;
+        return cut.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ');
+    }
+}
@@ -1,10 +1,13 @@
 package com.clipy.linux.view;
 
+import com.clipy.linux.history.HistoryUsage;
+import com.clipy.linux.hotkey.HotkeyChord;
 import com.clipy.linux.model.PreferencesModel;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextFormatter;
@@ -13,6 +16,11 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 public class PreferencesView {
@@ -25,11 +33,36 @@ public class PreferencesView {
     private final TextField maxHistoryField;
     private final TextField maxTrayField;
     private final CheckBox plainTextCheck;
+    private final TextField maxHistoryMbField;
+    private final TextField maxItemKbField;
+    private final TextField maxAgeField;
+    private final ComboBox<String> evictionBox;
+    // action name -> chord field, in PreferencesModel.defaultHotkeys() order
+    private final Map<String, TextField> hotkeyFields = new LinkedHashMap<>();
+    private final Label hotkeyError;
+    private final Label usageLabel;
+    private final Label diagnosticsLabel;
     private final PreferencesModel current;
     private final Listener listener;
+    private final Supplier<HistoryUsage> usage;
+    private final Supplier<String> diagnostics;
 
-    public PreferencesView(Stage owner, PreferencesModel prefs, Listener listener) {
+    // PreferencesModel.evictionPolicy values and their labels, same order
+    private static final List<String> POLICIES = List.of("LRU", "OLDEST_FIRST", "LARGEST_FIRST");
+    private static final List<String> POLICY_LABELS =
+            List.of("Least recently copied", "Oldest first", "Largest first");
+    private static final Map<String, String> HOTKEY_LABELS =
+            Map.of("launcher", "Launcher hotkey:", "history", "History window hotkey:");
+
+    /**
+     * @param diagnostics timings and cache numbers, one per line, shown at
+     *                    the bottom; may be null
+     */
+    public PreferencesView(Stage owner, PreferencesModel prefs, Supplier<HistoryUsage> usage,
+                           Supplier<String> diagnostics, Listener listener) {
         this.listener = listener;
+        this.usage = usage;
+        this.diagnostics = diagnostics;
         this.current = prefs; // mutate this instance directly
 
         stage = new Stage(StageStyle.UTILITY);
@@ -46,6 +79,33 @@ public class PreferencesView {
         plainTextCheck = new CheckBox("Plain text only");
         plainTextCheck.setSelected(prefs.plainTextOnly);
 
+        Label maxHistoryMbLabel = new Label("History size limit (MB, 0 = none):");
+        maxHistoryMbField = createNumericField(0, 100000, prefs.maxHistoryMb);
+
+        Label maxItemKbLabel = new Label("Max item size (KB, 0 = none):");
+        maxItemKbField = createNumericField(0, 10000000, prefs.maxItemKb);
+
+        Label maxAgeLabel = new Label("Forget items after (days, 0 = never):");
+        maxAgeField = createNumericField(0, 36500, prefs.maxAgeDays);
+
+        Label evictionLabel = new Label("When full, remove:");
+        evictionBox = new ComboBox<>();
+        evictionBox.getItems().setAll(POLICY_LABELS);
+        selectPolicy(prefs.evictionPolicy);
+
+        for (String action : PreferencesModel.defaultHotkeys().keySet()) {
+            TextField field = new TextField();
+            field.setPromptText("e.g. Ctrl+Shift+V, blank for none");
+            hotkeyFields.put(action, field);
+        }
+        hotkeyError = new Label();
+        hotkeyError.setStyle("-fx-text-fill: red;");
+
+        usageLabel = new Label();
+        diagnosticsLabel = new Label();
+        diagnosticsLabel.setWrapText(true);
+        diagnosticsLabel.setStyle("-fx-text-fill: gray;");
+
         Button saveBtn = new Button("Save");
         Button cancelBtn = new Button("Cancel");
 
@@ -53,11 +113,22 @@ public class PreferencesView {
             int maxHistory = parseOrClamp(maxHistoryField.getText(), 10, 100000);
             int maxTray = parseOrClamp(maxTrayField.getText(), 3, 1000);
             boolean plainOnly = plainTextCheck.isSelected();
+            int maxHistoryMb = parseOrClamp(maxHistoryMbField.getText(), 0, 100000);
+            int maxItemKb = parseOrClamp(maxItemKbField.getText(), 0, 10000000);
+            int maxAgeDays = parseOrClamp(maxAgeField.getText(), 0, 36500);
+            int policy = Math.max(evictionBox.getSelectionModel().getSelectedIndex(), 0);
+            Map<String, String> hotkeys = readHotkeys();
+            if (hotkeys == null) return; // hotkeyError says why
 
             // mutate existing model
             current.maxHistory = maxHistory;
             current.maxTrayItems = maxTray;
             current.plainTextOnly = plainOnly;
+            current.maxHistoryMb = maxHistoryMb;
+            current.maxItemKb = maxItemKb;
+            current.maxAgeDays = maxAgeDays;
+            current.evictionPolicy = POLICIES.get(policy);
+            current.hotkeys = hotkeys;
 
             if (listener != null) {
                 listener.onPreferencesChanged(current);
@@ -76,11 +147,27 @@ public class PreferencesView {
         grid.add(maxHistoryField, 1, 0);
         grid.add(maxTrayLabel, 0, 1);
         grid.add(maxTrayField, 1, 1);
-        grid.add(plainTextCheck, 0, 2, 2, 1);
-        grid.add(saveBtn, 0, 3);
-        grid.add(cancelBtn, 1, 3);
+        grid.add(maxHistoryMbLabel, 0, 2);
+        grid.add(maxHistoryMbField, 1, 2);
+        grid.add(maxItemKbLabel, 0, 3);
+        grid.add(maxItemKbField, 1, 3);
+        grid.add(maxAgeLabel, 0, 4);
+        grid.add(maxAgeField, 1, 4);
+        grid.add(evictionLabel, 0, 5);
+        grid.add(evictionBox, 1, 5);
+        int row = 6;
+        for (Map.Entry<String, TextField> e : hotkeyFields.entrySet()) {
+            grid.add(new Label(HOTKEY_LABELS.getOrDefault(e.getKey(), e.getKey() + " hotkey:")), 0, row);
+            grid.add(e.getValue(), 1, row++);
+        }
+        grid.add(hotkeyError, 0, row++, 2, 1);
+        grid.add(plainTextCheck, 0, row++, 2, 1);
+        grid.add(usageLabel, 0, row++, 2, 1);
+        grid.add(saveBtn, 0, row);
+        grid.add(cancelBtn, 1, row++);
+        grid.add(diagnosticsLabel, 0, row, 2, 1);
 
-        Scene scene = new Scene(grid, 320, 180);
+        Scene scene = new Scene(grid, 480, 560);
         stage.setScene(scene);
     }
 
@@ -110,6 +197,37 @@ public class PreferencesView {
         return field;
     }
 
+    // The edited chords, or null after showing why one cannot be used.
+    // Actions without a field keep their chord.
+    private Map<String, String> readHotkeys() {
+        Map<String, String> hotkeys = new LinkedHashMap<>(current.hotkeys);
+        List<HotkeyChord> used = new ArrayList<>();
+        for (Map.Entry<String, TextField> e : hotkeyFields.entrySet()) {
+            String text = e.getValue().getText() == null ? "" : e.getValue().getText().trim();
+            if (!text.isEmpty()) {
+                try {
+                    HotkeyChord chord = HotkeyChord.parse(text);
+                    if (used.contains(chord)) {
+                        hotkeyError.setText(chord + " is used twice");
+                        return null;
+                    }
+                    used.add(chord);
+                } catch (IllegalArgumentException ex) {
+                    hotkeyError.setText(ex.getMessage());
+                    return null;
+                }
+            }
+            hotkeys.put(e.getKey(), text);
+        }
+        hotkeyError.setText("");
+        return hotkeys;
+    }
+
+    private void selectPolicy(String policy) {
+        int index = POLICIES.indexOf(policy);
+        evictionBox.getSelectionModel().select(Math.max(index, 0));
+    }
+
     private int parseOrClamp(String text, int min, int max) {
         try {
             int val = Integer.parseInt(text.trim());
@@ -125,6 +243,14 @@ public class PreferencesView {
         maxHistoryField.setText(String.valueOf(current.maxHistory));
         maxTrayField.setText(String.valueOf(current.maxTrayItems));
         plainTextCheck.setSelected(current.plainTextOnly);
+        maxHistoryMbField.setText(String.valueOf(current.maxHistoryMb));
+        maxItemKbField.setText(String.valueOf(current.maxItemKb));
+        maxAgeField.setText(String.valueOf(current.maxAgeDays));
+        selectPolicy(current.evictionPolicy);
+        hotkeyFields.forEach((action, field) -> field.setText(current.hotkeys.getOrDefault(action, "")));
+        hotkeyError.setText("");
+        usageLabel.setText(usage == null ? "" : "In use: " + usage.get().describe());
+        diagnosticsLabel.setText(diagnostics == null ? "" : diagnostics.get());
         stage.showAndWait();
     }
 }
@@ -0,0 +1,85 @@
+package com.clipy.linux.view;
+
+import com.clipy.linux.history.HistoryEntry;
+import com.clipy.linux.history.HistoryEvent;
+import com.clipy.linux.history.HistorySnapshot;
+import javafx.collections.ObservableListBase;
+
+import java.util.List;
+
+/**
+ * The history as the list view sees it: reads go straight to the latest
+ * immutable snapshot, and history events become list changes without
+ * copying or shifting anything, so an insert or an eviction costs the same
+ * however long the history is. Only used on the FX thread.
+ */
+final class SnapshotList extends ObservableListBase<HistoryEntry> {
+
+    private List<HistoryEntry> items = List.of();
+
+    @Override
+    public HistoryEntry get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Show {@code snapshot}, reported as one wholesale replacement.
+     */
+    void reset(HistorySnapshot snapshot) {
+        beginChange();
+        if (!items.isEmpty()) nextRemove(0, items); // immutable, safe to hand out
+        items = snapshot;
+        if (!snapshot.isEmpty()) nextAdd(0, snapshot.size());
+        endChange();
+    }
+
+    /**
+     * Move to {@code snapshot}, reporting {@code events} (those newer than
+     * {@code shownVersion}) as the changes that lead there.
+     *
+     * @return false, changing nothing, if the events do not lead there or
+     * need a {@link #reset} anyway (CLEARED, LOADED)
+     */
+    boolean apply(List<HistoryEvent> events, long shownVersion, HistorySnapshot snapshot) {
+        int size = items.size();
+        for (HistoryEvent e : events) {
+            if (e.version() <= shownVersion) continue;
+            switch (e.type()) {
+                case INSERTED -> size++;
+                case PROMOTED -> {
+                    if (e.index() < 0 || e.index() >= size) return false;
+                }
+                case EVICTED -> {
+                    if (e.index() < 0 || e.index() >= size) return false;
+                    size--;
+                }
+                case CLEARED, LOADED -> {
+                    return false;
+                }
+            }
+        }
+        if (size != snapshot.size()) return false;
+        beginChange();
+        for (HistoryEvent e : events) {
+            if (e.version() <= shownVersion) continue;
+            switch (e.type()) {
+                case INSERTED -> nextAdd(0, 1);
+                case PROMOTED -> {
+                    nextRemove(e.index(), e.item());
+                    nextAdd(0, 1);
+                }
+                case EVICTED -> nextRemove(e.index(), e.item());
+                default -> {
+                }
+            }
+        }
+        items = snapshot;
+        endChange();
+        return true;
+    }
+}
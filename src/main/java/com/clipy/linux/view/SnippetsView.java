@@ -2,6 +2,7 @@ package com.clipy.linux.view;
 
 import com.clipy.linux.model.Snippet;
 import com.clipy.linux.model.SnippetsModel;
+import com.clipy.linux.persistence.SnippetsImporter;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -10,10 +11,13 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.*;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 public class SnippetsView {
@@ -25,6 +29,7 @@ public class SnippetsView {
     private ListView<Snippet> snippetListView;
     private TextField nameField;
     private TextArea contentArea;
+    private Label saveStatus;
 
     private final ObservableList<String> folders = FXCollections.observableArrayList();
     private final ObservableList<Snippet> snippetsInFolder = FXCollections.observableArrayList();
@@ -46,11 +51,13 @@ public class SnippetsView {
 
         Button addFolderButton = new Button("+ Folder");
         Button renameFolderButton = new Button("Rename");
+        Button importButton = new Button("Import...");
 
         addFolderButton.setOnAction(e -> addFolder());
         renameFolderButton.setOnAction(e -> renameFolder());
+        importButton.setOnAction(e -> importSnippets(importButton));
 
-        HBox folderButtons = new HBox(8, addFolderButton, renameFolderButton);
+        HBox folderButtons = new HBox(8, addFolderButton, renameFolderButton, importButton);
         folderButtons.setPadding(new Insets(6, 0, 0, 0));
 
         VBox leftBox = new VBox(8, new Label("Folders"), folderListView, folderButtons);
@@ -102,6 +109,9 @@ public class SnippetsView {
         form.add(nameField, 1, 0);
         form.add(new Label("Content:"), 0, 1);
         form.add(contentArea, 1, 1);
+        Label abbreviationHint = new Label("Start the name with an abbreviation like \""
+                + Snippet.ABBREVIATION_PREFIX + "sig\" to type this snippet anywhere.");
+        form.add(abbreviationHint, 1, 2);
 
         GridPane.setHgrow(nameField, Priority.ALWAYS);
         GridPane.setHgrow(contentArea, Priority.ALWAYS);
@@ -114,7 +124,12 @@ public class SnippetsView {
         SplitPane splitPane = new SplitPane(leftBox, rightBox);
         splitPane.setDividerPositions(0.25);
 
+        saveStatus = new Label();
+        saveStatus.setPadding(new Insets(0, 10, 6, 10));
+        snippetsModel.setSaveListener(() -> Platform.runLater(this::refreshSaveStatus));
+
         BorderPane root = new BorderPane(splitPane);
+        root.setBottom(saveStatus);
 
         Scene scene = new Scene(root, 1000, 600);
         scene.setOnKeyPressed(e -> {
@@ -252,5 +267,43 @@ public class SnippetsView {
                 nameField.getText(),
                 contentArea.getText()
         );
+        refreshSaveStatus();
+    }
+
+    // Parsing a big export takes a while, so it runs on its own thread; the
+    // result goes into the model as one batch on the FX thread.
+    private void importSnippets(Button importButton) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import snippets");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Clipy snippets (XML, JSON)", "*.xml", "*.json"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = chooser.showOpenDialog(stage);
+        if (file == null) return;
+        importButton.setDisable(true);
+        saveStatus.setText("Importing " + file.getName() + "...");
+        Thread t = new Thread(() -> {
+            try {
+                List<Snippet> snippets = SnippetsImporter.read(file.toPath());
+                Platform.runLater(() -> {
+                    snippetsModel.batch(tx -> snippets.forEach(tx::add));
+                    refreshFolders();
+                    saveStatus.setText("Imported " + snippets.size() + " snippets");
+                    importButton.setDisable(false);
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> {
+                    saveStatus.setText("Import failed: " + e.getMessage());
+                    importButton.setDisable(false);
+                });
+            }
+        }, "snippets-import");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void refreshSaveStatus() {
+        saveStatus.setText(snippetsModel.getSaveStatus());
     }
 }
@@ -0,0 +1,182 @@
+package com.clipy.linux.view;
+
+import com.clipy.linux.ClipboardService;
+import com.clipy.linux.clipboard.ClipFlavor;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thumbnails of image clips for the history list, kept in memory up to a
+ * byte budget and dropped least recently shown first.
+ *
+ * Only thumb.png files are read, never the full image. A miss returns null
+ * at once and loads the thumbnail on a small "thumbnails" pool; when it is
+ * in, {@code onLoaded} runs on the FX thread so the list can redraw. The
+ * pool's queue is bounded: a request that does not fit is forgotten and
+ * asked again the next time its cell is drawn. A thumbnail that could not
+ * be loaded is asked for again after {@link #RETRY_MILLIS}, or sooner
+ * through {@link #retry}. Apart from the pool, only used on the FX thread.
+ */
+public class ThumbnailCache {
+
+    private static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+    private static final int LOAD_THREADS = 2;
+    private static final int LOAD_QUEUE = 32;
+    private static final long RETRY_MILLIS = 10_000;
+    private static final int MAX_FAILED = 256;
+
+    private final ClipboardService clipboardService;
+    private final long maxBytes;
+    private final Map<Long, Image> images = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<Long> loading = new HashSet<>();
+    // hash -> when its load failed; oldest dropped first
+    private final Map<Long, Long> failed = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > MAX_FAILED;
+        }
+    };
+    private final ThreadPoolExecutor pool;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public ThumbnailCache(ClipboardService clipboardService) {
+        this(clipboardService, DEFAULT_MAX_BYTES);
+    }
+
+    public ThumbnailCache(ClipboardService clipboardService, long maxBytes) {
+        this.clipboardService = clipboardService;
+        this.maxBytes = maxBytes;
+        this.pool = new ThreadPoolExecutor(1, LOAD_THREADS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(LOAD_QUEUE), r -> {
+            Thread t = new Thread(r, "thumbnails");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * The thumbnail for the clip with this hash, or null if it is not
+     * loaded yet (then {@code onLoaded} runs once it is) or there is none.
+     */
+    public Image get(long hash, Runnable onLoaded) {
+        Image image = images.get(hash);
+        if (image != null) {
+            hits++;
+            return image;
+        }
+        if (!ClipFlavor.IMAGE.in(clipboardService.getRichFlavors(hash))) return null;
+        Long failedAt = failed.get(hash);
+        if (failedAt != null) {
+            if (System.currentTimeMillis() - failedAt < RETRY_MILLIS) return null;
+            failed.remove(hash);
+        }
+        misses++;
+        if (loading.add(hash)) {
+            try {
+                pool.execute(() -> load(hash, onLoaded));
+            } catch (RejectedExecutionException e) {
+                loading.remove(hash);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Load this thumbnail again the next time it is asked for, e.g. once
+     * it has been made.
+     */
+    public void retry(long hash) {
+        failed.remove(hash);
+    }
+
+    /**
+     * Share of lookups answered from memory, 0 before the first one.
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int size() {
+        return images.size();
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * One line for the diagnostics, e.g. "12 cached (640 KB), 90 hits,
+     * 10 misses, 90% hit rate".
+     */
+    public String describe() {
+        return String.format("%d cached (%d KB), %d hits, %d misses, %.0f%% hit rate",
+                images.size(), bytes / 1024, hits, misses, getHitRate() * 100);
+    }
+
+    // On the pool.
+    private void load(long hash, Runnable onLoaded) {
+        Image image = null;
+        try {
+            Path file = clipboardService.getThumbnail(hash);
+            if (file != null) {
+                image = new Image(file.toUri().toString());
+                if (image.isError()) image = null;
+            }
+        } catch (Exception e) {
+            System.err.println("Could not load thumbnail: " + e.getMessage());
+        }
+        Image loaded = image;
+        Platform.runLater(() -> {
+            loading.remove(hash);
+            if (loaded == null) {
+                failed.put(hash, System.currentTimeMillis());
+                return;
+            }
+            put(hash, loaded);
+            if (onLoaded != null) onLoaded.run();
+        });
+    }
+
+    private void put(long hash, Image image) {
+        Image old = images.put(hash, image);
+        if (old != null) bytes -= sizeOf(old);
+        bytes += sizeOf(image);
+        Iterator<Image> it = images.values().iterator();
+        // keep at least the one just added
+        while (bytes > maxBytes && images.size() > 1) {
+            Image eldest = it.next();
+            bytes -= sizeOf(eldest);
+            it.remove();
+        }
+    }
+
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+}